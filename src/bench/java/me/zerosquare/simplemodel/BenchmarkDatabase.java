@@ -0,0 +1,22 @@
+package me.zerosquare.simplemodel;
+
+/**
+ * In-memory H2 database with the test schema for benchmarks.
+ * Connections are pooled with statement cache, so benchmarks measure the library rather than opening connections.
+ */
+class BenchmarkDatabase {
+
+  static void open() throws Exception {
+    Connector.setConnectionInfo("jdbc:h2:mem:bench;DB_CLOSE_DELAY=-1", "sa", "sa");
+    Connector.enableConnectionPool(new ConnectionPool.Config()
+            .maxSize(4)
+            .statementCacheSize(64));
+
+    Schema.loadSchema("src/test/resources/db/create-simplemodel-test-table.sql");
+  }
+
+  static void close() {
+    Connector.disableConnectionPool();
+  }
+
+}
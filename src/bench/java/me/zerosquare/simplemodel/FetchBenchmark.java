@@ -0,0 +1,98 @@
+package me.zerosquare.simplemodel;
+
+import me.zerosquare.simplemodel.model.Employee;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fetch of 1, 100 and 10k rows against in-memory H2.
+ * Compare ORM models, raw models of Model.table, compact storage, scan, columnar fetch and plain JDBC.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FetchBenchmark {
+
+  private static final String SQL = "SELECT * from employees";
+
+  @Param({"1", "100", "10000"})
+  private int rows;
+
+  @Setup
+  public void setup() throws Exception {
+    BenchmarkDatabase.open();
+
+    List<Employee> employees = new ArrayList<>(rows);
+    for (int i = 0; i < rows; i++) {
+      Employee e = new Employee();
+      e.name = "employee" + i;
+      e.age = i % 60;
+      e.companyId = i % 2 == 0 ? (long) i : null;
+      employees.add(e);
+    }
+    Model.bulkCreate(employees);
+  }
+
+  @TearDown
+  public void tearDown() {
+    BenchmarkDatabase.close();
+  }
+
+  @Benchmark
+  public List<Employee> orm() throws Exception {
+    return new Employee().fetch();
+  }
+
+  @Benchmark
+  public List<Model> raw() throws Exception {
+    return Model.table("employees").fetch();
+  }
+
+  @Benchmark
+  public List<Employee> ormCompact() throws Exception {
+    return new Employee().compactStorage(true).fetch();
+  }
+
+  @Benchmark
+  public long scan(Blackhole bh) throws Exception {
+    return new Employee().scan(row -> {
+      bh.consume(row.getLong(1));
+      bh.consume(row.getString(3));
+    });
+  }
+
+  @Benchmark
+  public ColumnarResult columnar() throws Exception {
+    return new Employee().fetchColumns();
+  }
+
+  /**
+   * baseline - read the same columns by JDBC without mapping
+   */
+  @Benchmark
+  public long jdbc(Blackhole bh) throws Exception {
+    return Model.execute(SQL, pst -> {
+      long n = 0;
+      try (ResultSet rs = pst.executeQuery()) {
+        while (rs.next()) {
+          bh.consume(rs.getLong(1));
+          bh.consume(rs.getLong(2));
+          bh.consume(rs.getString(3));
+          bh.consume(rs.getInt(4));
+          bh.consume(rs.getTimestamp(5));
+          n++;
+        }
+      }
+      return n;
+    });
+  }
+
+}
@@ -0,0 +1,94 @@
+package me.zerosquare.simplemodel;
+
+import me.zerosquare.simplemodel.model.Employee;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare ORM field accessors with plain reflection (Field.get/set) for both directions of mapping.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FieldAccessBenchmark {
+
+  private Employee employee;
+  private Object[] values;
+
+  private List<ModelMetadata.ColumnField> columns;
+  private Field[] fields;
+
+  private ModelData data;
+
+  @Setup
+  public void setup() {
+    employee = new Employee();
+    employee.id = 1L;
+    employee.companyId = 2L;
+    employee.name = "benchmark";
+    employee.age = 30;
+
+    columns = ModelMetadata.of(Employee.class).getColumns();
+    fields = new Field[columns.size()];
+    values = new Object[columns.size()];
+    for (int i = 0; i < columns.size(); i++) {
+      fields[i] = columns.get(i).getField();
+    }
+
+    data = new ModelData();
+    data.columnValuesFromAnnotation(employee);
+    for (int i = 0; i < columns.size(); i++) {
+      values[i] = data.get(columns.get(i).getName());
+    }
+  }
+
+  @Benchmark
+  public void reflectionGet(Blackhole bh) throws IllegalAccessException {
+    for (Field field : fields) {
+      bh.consume(field.get(employee));
+    }
+  }
+
+  @Benchmark
+  public void accessorGet(Blackhole bh) throws IllegalAccessException {
+    for (ModelMetadata.ColumnField column : columns) {
+      bh.consume(column.get(employee));
+    }
+  }
+
+  @Benchmark
+  public Employee reflectionSet() throws IllegalAccessException {
+    for (int i = 0; i < fields.length; i++) {
+      fields[i].set(employee, values[i]);
+    }
+    return employee;
+  }
+
+  @Benchmark
+  public Employee accessorSet() throws IllegalAccessException {
+    for (int i = 0; i < values.length; i++) {
+      columns.get(i).set(employee, values[i]);
+    }
+    return employee;
+  }
+
+  @Benchmark
+  public ModelData fieldsToColumnValues() {
+    data.columnValuesFromAnnotation(employee);
+    return data;
+  }
+
+  @Benchmark
+  public Employee columnValuesToFields() {
+    data.columnValuesToAnnotation(employee);
+    return employee;
+  }
+
+}
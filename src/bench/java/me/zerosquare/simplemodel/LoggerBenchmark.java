@@ -0,0 +1,66 @@
+package me.zerosquare.simplemodel;
+
+import me.zerosquare.simplemodel.internals.Logger;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of disabled trace logs in a per-parameter loop like Model.addParameters.
+ * Run with `-prof gc`: guarded and fixed arity calls should be 0 B/op, unlike eager String.format.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LoggerBenchmark {
+
+  private static final int PARAMS = 16;
+
+  private Object[] values;
+
+  @Setup
+  public void setup() {
+    values = new Object[PARAMS];
+    for (int i = 0; i < PARAMS; i++) {
+      values[i] = i % 2 == 0 ? "value" + i : (Object) (long) i;
+    }
+  }
+
+  /**
+   * baseline of the old logger - formats before the level check
+   */
+  @Benchmark
+  public void eagerFormat(Blackhole bh) {
+    for (int i = 0; i < PARAMS; i++) {
+      bh.consume(String.format("preparams - idx: %d val: %s", i, values[i]));
+    }
+  }
+
+  @Benchmark
+  public void varargsUnguarded() {
+    for (int i = 0; i < PARAMS; i++) {
+      Logger.t("preparams - idx: {} colidx: {} val: {}", i, i + 1, values[i]);
+    }
+  }
+
+  @Benchmark
+  public void varargsGuarded() {
+    for (int i = 0; i < PARAMS; i++) {
+      if (Logger.isTraceEnabled()) {
+        Logger.t("preparams - idx: {} colidx: {} val: {}", i, i + 1, values[i]);
+      }
+    }
+  }
+
+  @Benchmark
+  public void fixedArity() {
+    for (int i = 0; i < PARAMS; i++) {
+      Logger.t("preparams - val: {}", values[i]);
+    }
+  }
+
+}
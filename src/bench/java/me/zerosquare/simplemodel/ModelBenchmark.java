@@ -0,0 +1,99 @@
+package me.zerosquare.simplemodel;
+
+import me.zerosquare.simplemodel.model.Employee;
+import me.zerosquare.simplemodel.model.Product;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single model operations against in-memory H2 - create, find, update of modified columns, transaction and soft delete filter.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ModelBenchmark {
+
+  private static final int PRODUCTS = 100;
+
+  private long employeeId;
+  private Employee employee;
+  private int age;
+
+  @Setup
+  public void setup() throws Exception {
+    BenchmarkDatabase.open();
+
+    Employee e = new Employee();
+    e.name = "benchmark";
+    e.age = 30;
+    e.companyId = 1L;
+    employeeId = e.create();
+    employee = new Employee().find(employeeId);
+
+    List<Product> products = new ArrayList<>();
+    for (int i = 0; i < PRODUCTS; i++) {
+      Product p = new Product();
+      p.name = "product" + i;
+      p.price = i;
+      p.companyId = 1L;
+      products.add(p);
+    }
+    Model.bulkCreate(products);
+  }
+
+  @TearDown
+  public void tearDown() {
+    BenchmarkDatabase.close();
+  }
+
+  @TearDown(Level.Iteration)
+  public void cleanCreated() throws Exception {
+    Model.table("employees").where("id <> ?", employeeId).delete();
+  }
+
+  @Benchmark
+  public long create() throws Exception {
+    Employee e = new Employee();
+    e.name = "created";
+    e.age = 20;
+    return e.create();
+  }
+
+  @Benchmark
+  public Employee find() throws Exception {
+    return new Employee().find(employeeId);
+  }
+
+  /**
+   * only the modified column is updated
+   */
+  @Benchmark
+  public long updateModified() throws Exception {
+    employee.age = ++age;
+    return employee.update(true);
+  }
+
+  @Benchmark
+  public void transaction() throws Exception {
+    Transaction.execute(() -> {
+      Employee e = new Employee().find(employeeId);
+      e.age = ++age;
+      e.update(true);
+    });
+  }
+
+  /**
+   * fetch with `deleted_at is null` condition
+   */
+  @Benchmark
+  public List<Product> softDeleteFetch() throws Exception {
+    return new Product().fetch();
+  }
+
+}
@@ -0,0 +1,92 @@
+package me.zerosquare.simplemodel;
+
+import me.zerosquare.simplemodel.ModelMetadata.AssociationField;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Eager loading of associations for Model.includes.
+ * Each association is loaded by `IN` queries of keys of all fetched models, instead of a query for each model.
+ */
+class Associations {
+
+  static void load(List<? extends Model> models, List<String> names) throws Exception {
+    if (models.isEmpty()) return;
+
+    Class<?> clazz = models.get(0).getClass();
+    ModelMetadata meta = ModelMetadata.of(clazz);
+
+    for (String name : names) {
+      AssociationField association = meta.getAssociation(name);
+      if (association == null) {
+        throw new IllegalArgumentException(String.format("no such association: %s of %s", name, clazz.getName()));
+      }
+
+      if (association.isHasMany()) {
+        loadHasMany(models, association);
+      } else {
+        loadBelongsTo(models, association);
+      }
+    }
+  }
+
+  private static void loadBelongsTo(List<? extends Model> models, AssociationField association) throws Exception {
+    List<Long> keys = new ArrayList<>(models.size());
+    for (Model m : models) {
+      keys.add(toLong(m.get(association.getForeignKey())));
+    }
+
+    Model query = ModelMetadata.of(association.getModelClass()).newInstance();
+    Map<Long, Model> found = query.findMap(keys);
+
+    for (int i = 0; i < models.size(); i++) {
+      association.set(models.get(i), found.get(keys.get(i)));
+    }
+  }
+
+  private static void loadHasMany(List<? extends Model> models, AssociationField association) throws Exception {
+    LinkedHashSet<Long> ids = new LinkedHashSet<>();
+    for (Model m : models) {
+      if (m.getId() != null) ids.add(m.getId());
+    }
+
+    List<Long> idList = new ArrayList<>(ids);
+    Map<Long, List<Model>> children = new HashMap<>();
+    int chunkSize = Model.DEFAULT_IN_CHUNK_SIZE;
+
+    for (int from = 0; from < idList.size(); from += chunkSize) {
+      List<Long> chunk = idList.subList(from, Math.min(from + chunkSize, idList.size()));
+
+      Model query = ModelMetadata.of(association.getModelClass()).newInstance();
+      String table = query.getTableName();
+      List<Model> rows = query
+              .where(String.format("%s.%s IN (%s)", table, association.getForeignKey(),
+                      StringUtils.join(Collections.nCopies(chunk.size(), "?"), ',')), chunk.toArray())
+              .order("%s.id", table)
+              .fetch();
+
+      for (Model child : rows) {
+        Long key = toLong(child.get(association.getForeignKey()));
+        children.computeIfAbsent(key, k -> new ArrayList<>()).add(child);
+      }
+    }
+
+    for (Model m : models) {
+      List<Model> list = children.get(m.getId());
+      association.set(m, list != null ? list : new ArrayList<>());
+    }
+  }
+
+  private static Long toLong(Object o) {
+    if (o == null) return null;
+    if (o instanceof Number) return ((Number) o).longValue();
+    return Long.parseLong(o.toString());
+  }
+
+}
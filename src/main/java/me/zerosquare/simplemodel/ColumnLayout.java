@@ -0,0 +1,457 @@
+package me.zerosquare.simplemodel;
+
+import me.zerosquare.simplemodel.internals.Logger;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * How to read columns of a ResultSet into column values - store keys, labels and typed readers.
+ * It is resolved from ResultSetMetaData once and cached per SQL, so reading a row is a simple loop of typed reads.
+ */
+class ColumnLayout {
+
+  private static final int MAX_CACHED_LAYOUTS = 1024;
+
+  /**
+   * by SQL in LRU order
+   */
+  private static final Map<String, ColumnLayout> cache = Collections.synchronizedMap(
+          new LinkedHashMap<String, ColumnLayout>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ColumnLayout> eldest) {
+              return size() > MAX_CACHED_LAYOUTS;
+            }
+          });
+
+  /**
+   * reads a primitive column without boxing
+   */
+  private enum PrimitiveReader {
+    BOOLEAN(SlotMap.Kind.BOOLEAN) {
+      long readBits(ResultSet rs, int col) throws SQLException {
+        return rs.getBoolean(col) ? 1 : 0;
+      }
+    },
+    INT(SlotMap.Kind.INT) {
+      long readBits(ResultSet rs, int col) throws SQLException {
+        return rs.getInt(col);
+      }
+    },
+    LONG(SlotMap.Kind.LONG) {
+      long readBits(ResultSet rs, int col) throws SQLException {
+        return rs.getLong(col);
+      }
+    },
+    DOUBLE(SlotMap.Kind.DOUBLE) {
+      long readBits(ResultSet rs, int col) throws SQLException {
+        return Double.doubleToRawLongBits(rs.getDouble(col));
+      }
+    };
+
+    final SlotMap.Kind kind;
+
+    PrimitiveReader(SlotMap.Kind kind) {
+      this.kind = kind;
+    }
+
+    /**
+     * check rs.wasNull() after this
+     */
+    abstract long readBits(ResultSet rs, int col) throws SQLException;
+  }
+
+  private enum Reader {
+    BOOLEAN(PrimitiveReader.BOOLEAN) {
+      Object read(ResultSet rs, int col) throws SQLException {
+        boolean v = rs.getBoolean(col);
+        return rs.wasNull() ? null : v;
+      }
+    },
+    INT(PrimitiveReader.INT) {
+      Object read(ResultSet rs, int col) throws SQLException {
+        int v = rs.getInt(col);
+        return rs.wasNull() ? null : v;
+      }
+    },
+    LONG(PrimitiveReader.LONG) {
+      Object read(ResultSet rs, int col) throws SQLException {
+        long v = rs.getLong(col);
+        return rs.wasNull() ? null : v;
+      }
+    },
+    DOUBLE(PrimitiveReader.DOUBLE) {
+      Object read(ResultSet rs, int col) throws SQLException {
+        double v = rs.getDouble(col);
+        return rs.wasNull() ? null : v;
+      }
+    },
+    STRING {
+      Object read(ResultSet rs, int col) throws SQLException {
+        return rs.getString(col);
+      }
+    },
+    TIMESTAMP {
+      Object read(ResultSet rs, int col) throws SQLException {
+        return rs.getTimestamp(col);
+      }
+    },
+    OBJECT {
+      Object read(ResultSet rs, int col) throws SQLException {
+        return rs.getObject(col);
+      }
+    };
+
+    /**
+     * null if the value is not read as a primitive
+     */
+    final PrimitiveReader primitive;
+
+    /**
+     * OBJECT if the value is not read as a primitive
+     */
+    final SlotMap.Kind kind;
+
+    Reader() {
+      this(null);
+    }
+
+    Reader(PrimitiveReader primitive) {
+      this.primitive = primitive;
+      this.kind = primitive != null ? primitive.kind : SlotMap.Kind.OBJECT;
+    }
+
+    /**
+     * @return boxed value, null for SQL NULL
+     */
+    abstract Object read(ResultSet rs, int col) throws SQLException;
+  }
+
+  private final int columnCount;
+
+  /**
+   * null if the column is skipped because its key is duplicated
+   */
+  private final String[] storeKeys;
+
+  /**
+   * `table_name`.`column_name` or `column_name` of each column, including skipped ones
+   */
+  private final String[] columnKeys;
+
+  /**
+   * null if label is same with the key
+   */
+  private final String[] labels;
+
+  private final Reader[] readers;
+
+  /**
+   * java.sql.Types of each column, to revalidate the cached layout
+   */
+  private final int[] types;
+
+  private final int keyCount;
+
+  /**
+   * for compact storage - slot of store key and label of each column (-1 if not stored)
+   */
+  private final SlotMap.Schema schema;
+  private final int[] storeSlots;
+  private final int[] labelSlots;
+
+  private static class MapperColumns {
+    private final ModelMapper<?> mapper;
+    private final int[] columns;
+
+    private MapperColumns(ModelMapper<?> mapper, int[] columns) {
+      this.mapper = mapper;
+      this.columns = columns;
+    }
+  }
+
+  /**
+   * columns of the last mapper read by this layout
+   */
+  private volatile MapperColumns mapperColumns;
+
+  /**
+   * @param sql cache key. null not to cache
+   */
+  static ColumnLayout of(String sql, String tableName, ResultSet rs) throws SQLException {
+    ResultSetMetaData meta = rs.getMetaData();
+
+    if (sql == null) {
+      return new ColumnLayout(tableName, meta);
+    }
+
+    ColumnLayout layout = cache.get(sql);
+    // in case of schema changes of `select *`
+    if (layout != null && layout.matches(meta)) {
+      return layout;
+    }
+
+    layout = new ColumnLayout(tableName, meta);
+    cache.put(sql, layout);
+    return layout;
+  }
+
+  /**
+   * stores each column as lowered key `table_name`.`column_name`, and also lowered key `alias (label)` if alias exists
+   */
+  private ColumnLayout(String tableName, ResultSetMetaData meta) throws SQLException {
+    columnCount = meta.getColumnCount();
+    storeKeys = new String[columnCount];
+    columnKeys = new String[columnCount];
+    labels = new String[columnCount];
+    readers = new Reader[columnCount];
+    types = new int[columnCount];
+    storeSlots = new int[columnCount];
+    labelSlots = new int[columnCount];
+
+    // key to slot, in order of appearance
+    Map<String, Integer> keys = new LinkedHashMap<>();
+    List<SlotMap.Kind> kinds = new ArrayList<>();
+
+    for (int i = 0; i < columnCount; i++) {
+      int col = i + 1;
+
+      // transform into lower case because h2 db returns CAPITALIZED table/column names!
+      String table = meta.getTableName(col).toLowerCase();
+      String key = meta.getColumnName(col).toLowerCase();
+      String label = meta.getColumnLabel(col).toLowerCase();
+      int type = meta.getColumnType(col);
+      types[i] = type;
+
+      readers[i] = readerOf(type);
+      if (readers[i] == Reader.OBJECT) {
+        Logger.d("Unknown column type! {}({}) {} on column {}",
+                meta.getColumnTypeName(col), type, meta.getColumnClassName(col), key);
+      }
+
+      String storeKey = key;
+      if (!table.equals(tableName) && table.length() > 0) {
+        storeKey = String.format("%s.%s", table, key);
+      }
+      columnKeys[i] = storeKey;
+
+      storeSlots[i] = -1;
+      labelSlots[i] = -1;
+
+      if (!keys.containsKey(storeKey)) {
+        storeKeys[i] = storeKey;
+        storeSlots[i] = keys.size();
+        keys.put(storeKey, storeSlots[i]);
+        kinds.add(readers[i].kind);
+      } else {
+        Logger.w("key duplicated! overwrite skipped! - table: {} storekey: {}", table, storeKey);
+      }
+
+      if (!label.equals(key)) {
+        labels[i] = label;
+        Integer slot = keys.get(label);
+        if (slot == null) {
+          slot = keys.size();
+          keys.put(label, slot);
+          kinds.add(readers[i].kind);
+        } else if (kinds.get(slot) != readers[i].kind) {
+          // label shares the slot of another column of different type
+          kinds.set(slot, SlotMap.Kind.OBJECT);
+        }
+        labelSlots[i] = slot;
+      }
+
+      Logger.t("layout - table: {} key: {} label: {} type: {} reader: {}", table, key, label, type, readers[i]);
+    }
+
+    keyCount = keys.size();
+    schema = new SlotMap.Schema(new ArrayList<>(keys.keySet()), kinds);
+  }
+
+  private boolean matches(ResultSetMetaData meta) throws SQLException {
+    if (columnCount != meta.getColumnCount()) return false;
+
+    for (int i = 0; i < columnCount; i++) {
+      if (types[i] != meta.getColumnType(i + 1)) return false;
+    }
+    return true;
+  }
+
+  // TODO need more
+  private static Reader readerOf(int type) {
+    switch (type) {
+      case Types.BIT:
+      case Types.TINYINT:
+      case Types.BOOLEAN:
+        return Reader.BOOLEAN;
+
+      case Types.SMALLINT:
+      case Types.INTEGER:
+        return Reader.INT;
+
+      case Types.BIGINT:
+        return Reader.LONG;
+
+      case Types.FLOAT:
+      case Types.DOUBLE:
+        return Reader.DOUBLE;
+
+      case Types.VARCHAR:
+      case Types.LONGVARCHAR:
+        return Reader.STRING;
+
+      case Types.TIMESTAMP:
+        return Reader.TIMESTAMP;
+
+      default:
+        return Reader.OBJECT;
+    }
+  }
+
+  int getColumnCount() {
+    return columnCount;
+  }
+
+  /**
+   * @param i 0-based column index
+   * @return null if the column is skipped because its key is duplicated
+   */
+  String storeKeyOf(int i) {
+    return storeKeys[i];
+  }
+
+  /**
+   * @return same with the store key, but not null for skipped columns
+   */
+  String columnKeyOf(int i) {
+    return columnKeys[i];
+  }
+
+  /**
+   * @return null if label is same with the key
+   */
+  String labelOf(int i) {
+    return labels[i];
+  }
+
+  SlotMap.Kind kindOf(int i) {
+    return readers[i].kind;
+  }
+
+  /**
+   * read a column of current row
+   */
+  Object readValue(ResultSet rs, int i) throws SQLException {
+    return readers[i].read(rs, i + 1);
+  }
+
+  /**
+   * read a column of current row without boxing. only for columns of primitive kind
+   */
+  long readBits(ResultSet rs, int i) throws SQLException {
+    return readers[i].primitive.readBits(rs, i + 1);
+  }
+
+  /**
+   * @return column of the ResultSet (starting from 1) for each column of the mapper, 0 if not selected. see ModelMapper.read
+   */
+  int[] columnsOf(ModelMapper<?> mapper) {
+    MapperColumns mc = mapperColumns;
+    if (mc != null && mc.mapper == mapper) {
+      return mc.columns;
+    }
+
+    String[] names = mapper.columnNames();
+    int[] columns = new int[names.length];
+    for (int k = 0; k < names.length; k++) {
+      // same value with read(rs) - a later column overwrites the key
+      for (int i = 0; i < columnCount; i++) {
+        if (names[k].equals(storeKeys[i]) || names[k].equals(labels[i])) {
+          columns[k] = i + 1;
+        }
+      }
+    }
+
+    mapperColumns = new MapperColumns(mapper, columns);
+    return columns;
+  }
+
+  /**
+   * read current row
+   *
+   * @param compact store values into SlotMap instead of HashMap
+   */
+  Map<String, Object> read(ResultSet rs, boolean compact) throws SQLException {
+    if (!compact) {
+      return read(rs);
+    }
+
+    SlotMap row = new SlotMap(schema);
+
+    for (int i = 0; i < columnCount; i++) {
+      int store = storeSlots[i];
+      int label = labelSlots[i];
+
+      if (isPrimitive(i)) {
+        long bits = readers[i].primitive.readBits(rs, i + 1);
+        boolean isNull = rs.wasNull();
+
+        if (store >= 0) {
+          row.setPrimitive(store, bits, isNull);
+        }
+        if (label >= 0) {
+          row.setPrimitive(label, bits, isNull);
+        }
+      } else {
+        Object val = readers[i].read(rs, i + 1);
+
+        if (store >= 0) {
+          row.setObject(store, val);
+        }
+        if (label >= 0) {
+          row.setObject(label, val);
+        }
+      }
+    }
+
+    return row;
+  }
+
+  /**
+   * primitive only if all slots of the column are primitive
+   */
+  private boolean isPrimitive(int i) {
+    if (readers[i].kind == SlotMap.Kind.OBJECT) return false;
+    return (storeSlots[i] < 0 || schema.kindOf(storeSlots[i]) != SlotMap.Kind.OBJECT)
+            && (labelSlots[i] < 0 || schema.kindOf(labelSlots[i]) != SlotMap.Kind.OBJECT);
+  }
+
+  /**
+   * read current row
+   */
+  Map<String, Object> read(ResultSet rs) throws SQLException {
+    Map<String, Object> colvals = new HashMap<>(keyCount * 4 / 3 + 1);
+
+    for (int i = 0; i < columnCount; i++) {
+      Object val = readers[i].read(rs, i + 1);
+
+      if (storeKeys[i] != null) {
+        colvals.put(storeKeys[i], val);
+      }
+      if (labels[i] != null) {
+        colvals.put(labels[i], val);
+      }
+    }
+
+    return colvals;
+  }
+
+}
@@ -0,0 +1,420 @@
+package me.zerosquare.simplemodel;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * Column-oriented result of a select query for analytics.
+ * Numeric and boolean columns are stored in primitive arrays, others in Object arrays, with a null bitmap per column.
+ * Row and column indexes start from 0.
+ */
+public class ColumnarResult {
+
+  public enum ColumnType {
+    /**
+     * integer and boolean (1 or 0) columns
+     */
+    LONG,
+    DOUBLE,
+    OBJECT
+  }
+
+  private static final int INITIAL_CAPACITY = 64;
+
+  private final String[] names;
+  private final Map<String, Integer> indexes;
+  private final ColumnType[] types;
+
+  private final long[][] longs;
+  private final double[][] doubles;
+  private final Object[][] objects;
+  private final BitSet[] nulls;
+
+  private int size;
+
+  private ColumnarResult(ColumnLayout layout) {
+    int n = layout.getColumnCount();
+    names = new String[n];
+    indexes = new HashMap<>();
+    types = new ColumnType[n];
+    longs = new long[n][];
+    doubles = new double[n][];
+    objects = new Object[n][];
+    nulls = new BitSet[n];
+
+    for (int i = 0; i < n; i++) {
+      String storeKey = layout.storeKeyOf(i);
+      String label = layout.labelOf(i);
+      // skipped duplicated column has no store key, but is still a column of the result
+      names[i] = label != null ? label : layout.columnKeyOf(i);
+      if (label != null) indexes.putIfAbsent(label, i);
+      if (storeKey != null) indexes.putIfAbsent(storeKey, i);
+
+      types[i] = typeOf(layout.kindOf(i));
+      switch (types[i]) {
+        case LONG:
+          longs[i] = new long[INITIAL_CAPACITY];
+          break;
+        case DOUBLE:
+          doubles[i] = new double[INITIAL_CAPACITY];
+          break;
+        default:
+          objects[i] = new Object[INITIAL_CAPACITY];
+      }
+      nulls[i] = new BitSet();
+    }
+  }
+
+  private static ColumnType typeOf(SlotMap.Kind kind) {
+    switch (kind) {
+      case INT:
+      case LONG:
+      case BOOLEAN:
+        return ColumnType.LONG;
+      case DOUBLE:
+        return ColumnType.DOUBLE;
+      default:
+        return ColumnType.OBJECT;
+    }
+  }
+
+  /**
+   * read all remaining rows
+   */
+  static ColumnarResult read(ResultSet rs, ColumnLayout layout) throws SQLException {
+    ColumnarResult result = new ColumnarResult(layout);
+    int n = result.names.length;
+    int capacity = INITIAL_CAPACITY;
+
+    while (rs.next()) {
+      int row = result.size;
+      if (row == capacity) {
+        capacity *= 2;
+        result.resize(capacity);
+      }
+
+      for (int i = 0; i < n; i++) {
+        switch (result.types[i]) {
+          case LONG:
+            result.longs[i][row] = layout.readBits(rs, i);
+            break;
+          case DOUBLE:
+            result.doubles[i][row] = Double.longBitsToDouble(layout.readBits(rs, i));
+            break;
+          default:
+            result.objects[i][row] = layout.readValue(rs, i);
+        }
+        if (rs.wasNull()) {
+          result.nulls[i].set(row);
+        }
+      }
+
+      result.size++;
+    }
+
+    result.resize(result.size);
+    return result;
+  }
+
+  private void resize(int capacity) {
+    for (int i = 0; i < names.length; i++) {
+      if (longs[i] != null) longs[i] = Arrays.copyOf(longs[i], capacity);
+      if (doubles[i] != null) doubles[i] = Arrays.copyOf(doubles[i], capacity);
+      if (objects[i] != null) objects[i] = Arrays.copyOf(objects[i], capacity);
+    }
+  }
+
+  /**
+   * @return number of rows
+   */
+  public int size() {
+    return size;
+  }
+
+  public int getColumnCount() {
+    return names.length;
+  }
+
+  /**
+   * @return column labels (or `table`.`column` for joined tables)
+   */
+  public List<String> getColumnNames() {
+    return Collections.unmodifiableList(Arrays.asList(names));
+  }
+
+  /**
+   * Resolve column index once and use index getters in loops.
+   *
+   * @throws IllegalArgumentException if no such column
+   */
+  public int indexOf(String columnName) {
+    Integer idx = indexes.get(columnName.toLowerCase());
+    if (idx == null) {
+      throw new IllegalArgumentException(String.format("no such column: %s", columnName));
+    }
+    return idx;
+  }
+
+  public ColumnType getType(int column) {
+    return types[column];
+  }
+
+  public boolean isNull(int column, int row) {
+    return nulls[column].get(row);
+  }
+
+  /**
+   * OBJECT columns of numbers (e.g. DECIMAL) can be read too, but slower than LONG or DOUBLE columns.
+   *
+   * @return 0 if null
+   * @throws IllegalStateException if the value is not a number
+   */
+  public long getLong(int column, int row) {
+    switch (types[column]) {
+      case LONG:
+        return longs[column][row];
+      case DOUBLE:
+        return (long) doubles[column][row];
+      default:
+        return numberAt(column, row).longValue();
+    }
+  }
+
+  /**
+   * @return 0 if null
+   * @throws IllegalStateException if the value is not a number
+   * @see #getLong(int, int)
+   */
+  public double getDouble(int column, int row) {
+    switch (types[column]) {
+      case LONG:
+        return longs[column][row];
+      case DOUBLE:
+        return doubles[column][row];
+      default:
+        return numberAt(column, row).doubleValue();
+    }
+  }
+
+  private Number numberAt(int column, int row) {
+    Object v = objects[column][row];
+    if (v == null) return 0;
+    if (!(v instanceof Number)) {
+      throw notNumeric(column);
+    }
+    return (Number) v;
+  }
+
+  /**
+   * @return false if null
+   */
+  public boolean getBoolean(int column, int row) {
+    return getLong(column, row) != 0;
+  }
+
+  public String getString(int column, int row) {
+    Object v = getObject(column, row);
+    return v != null ? v.toString() : null;
+  }
+
+  /**
+   * @return boxed value, null if null. integer columns are boxed as Long
+   */
+  public Object getObject(int column, int row) {
+    if (nulls[column].get(row)) return null;
+
+    switch (types[column]) {
+      case LONG:
+        return longs[column][row];
+      case DOUBLE:
+        return doubles[column][row];
+      default:
+        return objects[column][row];
+    }
+  }
+
+  /**
+   * Values of a LONG column. Do not modify the array. Null rows are 0.
+   *
+   * @throws IllegalStateException if the column is not LONG
+   */
+  public long[] getLongs(int column) {
+    checkType(column, ColumnType.LONG);
+    return longs[column];
+  }
+
+  /**
+   * Values of a DOUBLE column. Do not modify the array. Null rows are 0.
+   *
+   * @throws IllegalStateException if the column is not DOUBLE
+   */
+  public double[] getDoubles(int column) {
+    checkType(column, ColumnType.DOUBLE);
+    return doubles[column];
+  }
+
+  /**
+   * Values of an OBJECT column. Do not modify the array.
+   *
+   * @throws IllegalStateException if the column is not OBJECT
+   */
+  public Object[] getObjects(int column) {
+    checkType(column, ColumnType.OBJECT);
+    return objects[column];
+  }
+
+  /**
+   * @return number of non-null values
+   */
+  public int count(String columnName) {
+    return size - nulls[indexOf(columnName)].cardinality();
+  }
+
+  /**
+   * Sum of non-null values. Integers are summed as long, so use this for LONG columns.
+   *
+   * @throws IllegalStateException if the column is not numeric
+   */
+  public long sumLong(String columnName) {
+    int col = indexOf(columnName);
+    if (types[col] != ColumnType.LONG) {
+      return (long) sum(columnName);
+    }
+
+    long[] values = longs[col];
+    long sum = 0;
+    // null rows are 0
+    for (int row = 0; row < size; row++) {
+      sum += values[row];
+    }
+    return sum;
+  }
+
+  /**
+   * Sum of non-null values
+   *
+   * @throws IllegalStateException if the column is not numeric
+   */
+  public double sum(String columnName) {
+    int col = indexOf(columnName);
+    double sum = 0;
+    switch (types[col]) {
+      case LONG:
+        return sumLong(columnName);
+      case DOUBLE:
+        double[] values = doubles[col];
+        for (int row = 0; row < size; row++) {
+          sum += values[row];
+        }
+        return sum;
+      default:
+        for (int row = 0; row < size; row++) {
+          sum += getDouble(col, row);
+        }
+        return sum;
+    }
+  }
+
+  /**
+   * @return minimum of non-null values, NaN if there is no value
+   * @throws IllegalStateException if the column is not numeric
+   */
+  public double min(String columnName) {
+    return extreme(columnName, true);
+  }
+
+  /**
+   * @return maximum of non-null values, NaN if there is no value
+   * @throws IllegalStateException if the column is not numeric
+   */
+  public double max(String columnName) {
+    return extreme(columnName, false);
+  }
+
+  private double extreme(String columnName, boolean min) {
+    int col = indexOf(columnName);
+    BitSet nullRows = nulls[col];
+    double result = Double.NaN;
+    for (int row = 0; row < size; row++) {
+      if (nullRows.get(row)) continue;
+
+      double v = getDouble(col, row);
+      if (Double.isNaN(result) || (min ? v < result : v > result)) {
+        result = v;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Row indexes grouped by values of the column, in order of first appearance.
+   * Null values are grouped by the null key.
+   */
+  public Map<Object, int[]> groupBy(String columnName) {
+    int col = indexOf(columnName);
+
+    Map<Object, RowList> groups = new LinkedHashMap<>();
+    for (int row = 0; row < size; row++) {
+      groups.computeIfAbsent(getObject(col, row), k -> new RowList()).add(row);
+    }
+
+    Map<Object, int[]> result = new LinkedHashMap<>(groups.size() * 4 / 3 + 1);
+    groups.forEach((key, rows) -> result.put(key, rows.toArray()));
+    return result;
+  }
+
+  private static class RowList {
+    private int[] rows = new int[4];
+    private int n;
+
+    void add(int row) {
+      if (n == rows.length) {
+        rows = Arrays.copyOf(rows, n * 2);
+      }
+      rows[n++] = row;
+    }
+
+    int[] toArray() {
+      return Arrays.copyOf(rows, n);
+    }
+  }
+
+  /**
+   * @return number of rows for each value of the key column
+   */
+  public Map<Object, Integer> countBy(String keyColumnName) {
+    Map<Object, Integer> counts = new LinkedHashMap<>();
+    groupBy(keyColumnName).forEach((key, rows) -> counts.put(key, rows.length));
+    return counts;
+  }
+
+  /**
+   * @return sum of non-null values of the value column for each value of the key column
+   * @throws IllegalStateException if the value column is not numeric
+   */
+  public Map<Object, Double> sumBy(String keyColumnName, String valueColumnName) {
+    int valueCol = indexOf(valueColumnName);
+
+    Map<Object, Double> sums = new LinkedHashMap<>();
+    groupBy(keyColumnName).forEach((key, rows) -> {
+      double sum = 0;
+      for (int row : rows) {
+        sum += getDouble(valueCol, row);
+      }
+      sums.put(key, sum);
+    });
+    return sums;
+  }
+
+  private void checkType(int column, ColumnType type) {
+    if (types[column] != type) {
+      throw new IllegalStateException(String.format("column %s is %s, not %s", names[column], types[column], type));
+    }
+  }
+
+  private IllegalStateException notNumeric(int column) {
+    return new IllegalStateException(String.format("column %s is not numeric", names[column]));
+  }
+
+}
@@ -0,0 +1,738 @@
+package me.zerosquare.simplemodel;
+
+import me.zerosquare.simplemodel.internals.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Simple built-in connection pool used by Connector when enabled.
+ * Idle connections are reused in LIFO order, so the most recently used (warm) connection is handed out first.
+ */
+public class ConnectionPool {
+
+  public static class Config {
+    private int minSize = 0;
+    private int maxSize = 10;
+    private long idleTimeoutMillis = TimeUnit.MINUTES.toMillis(10);
+    private boolean validateOnBorrow = true;
+    private int validationTimeoutSeconds = 5;
+    private long borrowTimeoutMillis = TimeUnit.SECONDS.toMillis(30);
+    private long leakDetectionThresholdMillis = 0;
+    private long housekeepingPeriodMillis = TimeUnit.SECONDS.toMillis(30);
+    private int statementCacheSize = 0;
+
+    /**
+     * Minimum number of connections kept open, even if they are idle.
+     */
+    public Config minSize(int minSize) {
+      this.minSize = minSize;
+      return this;
+    }
+
+    /**
+     * Maximum number of connections opened at the same time.
+     */
+    public Config maxSize(int maxSize) {
+      this.maxSize = maxSize;
+      return this;
+    }
+
+    /**
+     * Idle connections above minSize are closed after this time. 0 disables eviction.
+     */
+    public Config idleTimeoutMillis(long idleTimeoutMillis) {
+      this.idleTimeoutMillis = idleTimeoutMillis;
+      return this;
+    }
+
+    /**
+     * Check the connection with Connection.isValid before handing it out.
+     */
+    public Config validateOnBorrow(boolean validateOnBorrow) {
+      this.validateOnBorrow = validateOnBorrow;
+      return this;
+    }
+
+    public Config validationTimeoutSeconds(int validationTimeoutSeconds) {
+      this.validationTimeoutSeconds = validationTimeoutSeconds;
+      return this;
+    }
+
+    /**
+     * How long borrow waits for a free connection before throwing SQLTimeoutException.
+     */
+    public Config borrowTimeoutMillis(long borrowTimeoutMillis) {
+      this.borrowTimeoutMillis = borrowTimeoutMillis;
+      return this;
+    }
+
+    /**
+     * Warn with the borrower's stack trace if a connection is not returned within this time. 0 disables detection.
+     */
+    public Config leakDetectionThresholdMillis(long leakDetectionThresholdMillis) {
+      this.leakDetectionThresholdMillis = leakDetectionThresholdMillis;
+      return this;
+    }
+
+    /**
+     * Interval of the background task doing idle eviction, min size refill and leak detection.
+     */
+    public Config housekeepingPeriodMillis(long housekeepingPeriodMillis) {
+      this.housekeepingPeriodMillis = housekeepingPeriodMillis;
+      return this;
+    }
+
+    /**
+     * Maximum number of PreparedStatements cached per connection, keyed by SQL. 0 disables the cache.
+     * Cached statements are reused with clearParameters instead of being closed.
+     */
+    public Config statementCacheSize(int statementCacheSize) {
+      this.statementCacheSize = statementCacheSize;
+      return this;
+    }
+
+    public int getMinSize() {
+      return minSize;
+    }
+
+    public int getMaxSize() {
+      return maxSize;
+    }
+
+    public long getIdleTimeoutMillis() {
+      return idleTimeoutMillis;
+    }
+
+    public boolean isValidateOnBorrow() {
+      return validateOnBorrow;
+    }
+
+    public int getValidationTimeoutSeconds() {
+      return validationTimeoutSeconds;
+    }
+
+    public long getBorrowTimeoutMillis() {
+      return borrowTimeoutMillis;
+    }
+
+    public long getLeakDetectionThresholdMillis() {
+      return leakDetectionThresholdMillis;
+    }
+
+    public long getHousekeepingPeriodMillis() {
+      return housekeepingPeriodMillis;
+    }
+
+    public int getStatementCacheSize() {
+      return statementCacheSize;
+    }
+  }
+
+  /**
+   * Snapshot of pool counters
+   */
+  public static class Stats {
+    private final int total;
+    private final int idle;
+    private final int active;
+    private final int waiting;
+    private final long borrowed;
+    private final long created;
+    private final long destroyed;
+    private final long timeouts;
+    private final long validationFailures;
+    private final long leaks;
+    private final long statementCacheHits;
+    private final long statementCacheMisses;
+    private final long statementCacheEvictions;
+
+    private Stats(int total, int idle, int active, int waiting, long borrowed, long created, long destroyed,
+                  long timeouts, long validationFailures, long leaks,
+                  long statementCacheHits, long statementCacheMisses, long statementCacheEvictions) {
+      this.total = total;
+      this.idle = idle;
+      this.active = active;
+      this.waiting = waiting;
+      this.borrowed = borrowed;
+      this.created = created;
+      this.destroyed = destroyed;
+      this.timeouts = timeouts;
+      this.validationFailures = validationFailures;
+      this.leaks = leaks;
+      this.statementCacheHits = statementCacheHits;
+      this.statementCacheMisses = statementCacheMisses;
+      this.statementCacheEvictions = statementCacheEvictions;
+    }
+
+    /**
+     * @return number of open connections (idle + active)
+     */
+    public int getTotal() {
+      return total;
+    }
+
+    public int getIdle() {
+      return idle;
+    }
+
+    public int getActive() {
+      return active;
+    }
+
+    /**
+     * @return number of threads waiting for a connection at this moment
+     */
+    public int getWaiting() {
+      return waiting;
+    }
+
+    public long getBorrowedCount() {
+      return borrowed;
+    }
+
+    public long getCreatedCount() {
+      return created;
+    }
+
+    public long getDestroyedCount() {
+      return destroyed;
+    }
+
+    public long getTimeoutCount() {
+      return timeouts;
+    }
+
+    public long getValidationFailureCount() {
+      return validationFailures;
+    }
+
+    public long getLeakCount() {
+      return leaks;
+    }
+
+    public long getStatementCacheHitCount() {
+      return statementCacheHits;
+    }
+
+    public long getStatementCacheMissCount() {
+      return statementCacheMisses;
+    }
+
+    public long getStatementCacheEvictionCount() {
+      return statementCacheEvictions;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("total: %d idle: %d active: %d waiting: %d borrowed: %d created: %d destroyed: %d timeouts: %d validationFailures: %d leaks: %d " +
+                      "statementCacheHits: %d statementCacheMisses: %d statementCacheEvictions: %d",
+              total, idle, active, waiting, borrowed, created, destroyed, timeouts, validationFailures, leaks,
+              statementCacheHits, statementCacheMisses, statementCacheEvictions);
+    }
+  }
+
+  @FunctionalInterface
+  interface ConnectionFactory {
+    Connection create() throws SQLException;
+  }
+
+  private static class StatementKey {
+    private final String sql;
+    private final boolean returnGeneratedKeys;
+
+    private StatementKey(String sql, boolean returnGeneratedKeys) {
+      this.sql = sql;
+      this.returnGeneratedKeys = returnGeneratedKeys;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof StatementKey)) return false;
+      StatementKey k = (StatementKey) o;
+      return returnGeneratedKeys == k.returnGeneratedKeys && sql.equals(k.sql);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * sql.hashCode() + (returnGeneratedKeys ? 1 : 0);
+    }
+  }
+
+  /**
+   * Statement cache is only accessed by the thread borrowing the connection, so it is not synchronized.
+   */
+  private class PooledConnection {
+    private final Connection conn;
+    private long lastReturnedAt;
+    private long borrowedAt;
+    private Exception borrowedBy;
+    private boolean leakReported;
+
+    /**
+     * statements ready for reuse in LRU order. In-use statements are checked out from here.
+     */
+    private final LinkedHashMap<StatementKey, PreparedStatement> statements;
+    private final Map<PreparedStatement, StatementKey> checkedOut = new IdentityHashMap<>();
+
+    private PooledConnection(Connection conn) {
+      this.conn = conn;
+      this.lastReturnedAt = System.currentTimeMillis();
+      this.statements = new LinkedHashMap<StatementKey, PreparedStatement>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<StatementKey, PreparedStatement> eldest) {
+          if (size() <= config.statementCacheSize) return false;
+          statementCacheEvictions.incrementAndGet();
+          Connector.tryClose(eldest.getValue());
+          return true;
+        }
+      };
+    }
+
+    private PreparedStatement prepareStatement(String sql, boolean returnGeneratedKeys) throws SQLException {
+      StatementKey key = new StatementKey(sql, returnGeneratedKeys);
+
+      PreparedStatement pst = statements.remove(key);
+      if (pst != null) {
+        statementCacheHits.incrementAndGet();
+      } else {
+        statementCacheMisses.incrementAndGet();
+        pst = conn.prepareStatement(sql, returnGeneratedKeys ? Statement.RETURN_GENERATED_KEYS : Statement.NO_GENERATED_KEYS);
+      }
+
+      checkedOut.put(pst, key);
+      return pst;
+    }
+
+    /**
+     * @return false if the statement was not prepared by this cache
+     */
+    private boolean releaseStatement(PreparedStatement pst) {
+      StatementKey key = checkedOut.remove(pst);
+      if (key == null) return false;
+
+      try {
+        // result sets left open (e.g. by Model.execute callers) would hold cursors until the statement is reused
+        Connector.tryClose(pst.getResultSet());
+        pst.clearParameters();
+      } catch (SQLException e) {
+        Connector.tryClose(pst);
+        return true;
+      }
+
+      // same statement can be checked out twice (e.g. nested queries), keep only one of them
+      PreparedStatement old = statements.put(key, pst);
+      if (old != null) {
+        Connector.tryClose(old);
+      }
+      return true;
+    }
+  }
+
+  private final Config config;
+  private final ConnectionFactory factory;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition available = lock.newCondition();
+
+  // guarded by lock
+  private final ArrayDeque<PooledConnection> idle = new ArrayDeque<>();
+  private final Map<Connection, PooledConnection> borrowed = new IdentityHashMap<>();
+  private int total;
+  private int waiting;
+  private boolean closed;
+
+  private long borrowedCount;
+  private long createdCount;
+  private long destroyedCount;
+  private long timeoutCount;
+  private long validationFailureCount;
+  private long leakCount;
+
+  private final AtomicLong statementCacheHits = new AtomicLong();
+  private final AtomicLong statementCacheMisses = new AtomicLong();
+  private final AtomicLong statementCacheEvictions = new AtomicLong();
+
+  private final ScheduledExecutorService housekeeper;
+
+  ConnectionPool(Config config, ConnectionFactory factory) {
+    if (config.maxSize < 1 || config.minSize < 0 || config.minSize > config.maxSize) {
+      throw new IllegalArgumentException(String.format("invalid pool size - min: %d max: %d", config.minSize, config.maxSize));
+    }
+
+    this.config = config;
+    this.factory = factory;
+
+    if (config.housekeepingPeriodMillis > 0) {
+      housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "simplemodel-pool-housekeeper");
+        t.setDaemon(true);
+        return t;
+      });
+      housekeeper.scheduleWithFixedDelay(this::housekeep,
+              config.housekeepingPeriodMillis, config.housekeepingPeriodMillis, TimeUnit.MILLISECONDS);
+    } else {
+      housekeeper = null;
+    }
+
+    fillMinSize();
+  }
+
+  Connection borrow() throws SQLException {
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.borrowTimeoutMillis);
+
+    while (true) {
+      PooledConnection pc = null;
+      boolean create = false;
+
+      lock.lock();
+      try {
+        while (pc == null && !create) {
+          if (closed) {
+            throw new SQLException("connection pool is closed");
+          }
+
+          pc = idle.pollFirst();
+          if (pc != null) break;
+
+          if (total < config.maxSize) {
+            total++;
+            create = true;
+            break;
+          }
+
+          long remaining = deadline - System.nanoTime();
+          if (remaining <= 0) {
+            timeoutCount++;
+            throw new SQLTimeoutException(String.format("timed out after %dms waiting for a connection - %s",
+                    config.borrowTimeoutMillis, stats()));
+          }
+
+          waiting++;
+          try {
+            available.awaitNanos(remaining);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("interrupted while waiting for a connection", e);
+          } finally {
+            waiting--;
+          }
+        }
+      } finally {
+        lock.unlock();
+      }
+
+      if (create) {
+        pc = createConnection();
+      } else if (!validate(pc)) {
+        destroy(pc);
+        continue;
+      }
+
+      markBorrowed(pc);
+      return pc.conn;
+    }
+  }
+
+  /**
+   * Return the connection to the pool. Connections not borrowed from this pool are just closed.
+   */
+  void release(Connection conn) {
+    if (conn == null) return;
+
+    PooledConnection pc;
+    boolean discard;
+
+    lock.lock();
+    try {
+      pc = borrowed.remove(conn);
+      discard = pc == null || closed;
+    } finally {
+      lock.unlock();
+    }
+
+    if (pc == null) {
+      Connector.tryClose(conn);
+      return;
+    }
+
+    if (discard || isClosed(conn)) {
+      destroy(pc);
+      return;
+    }
+
+    // statements never returned by the borrower
+    pc.checkedOut.keySet().forEach(Connector::tryClose);
+    pc.checkedOut.clear();
+
+    lock.lock();
+    try {
+      pc.lastReturnedAt = System.currentTimeMillis();
+      pc.borrowedBy = null;
+      idle.addFirst(pc);
+      available.signal();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Prepare statement from the statement cache of the borrowed connection if enabled.
+   * Statement should be returned by releaseStatement.
+   */
+  PreparedStatement prepareStatement(Connection conn, String sql, boolean returnGeneratedKeys) throws SQLException {
+    PooledConnection pc = config.statementCacheSize > 0 ? lookup(conn) : null;
+    if (pc == null) {
+      return conn.prepareStatement(sql, returnGeneratedKeys ? Statement.RETURN_GENERATED_KEYS : Statement.NO_GENERATED_KEYS);
+    }
+    return pc.prepareStatement(sql, returnGeneratedKeys);
+  }
+
+  /**
+   * Return statement to the statement cache, or close it if it is not cached.
+   */
+  void releaseStatement(Connection conn, PreparedStatement pst) {
+    if (pst == null) return;
+
+    PooledConnection pc = config.statementCacheSize > 0 ? lookup(conn) : null;
+    if (pc == null || !pc.releaseStatement(pst)) {
+      Connector.tryClose(pst);
+    }
+  }
+
+  private PooledConnection lookup(Connection conn) {
+    lock.lock();
+    try {
+      return borrowed.get(conn);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Close idle connections and stop housekeeping. Borrowed connections are closed when they are released.
+   */
+  void close() {
+    List<PooledConnection> toClose;
+
+    lock.lock();
+    try {
+      closed = true;
+      toClose = new ArrayList<>(idle);
+      idle.clear();
+      available.signalAll();
+    } finally {
+      lock.unlock();
+    }
+
+    if (housekeeper != null) {
+      housekeeper.shutdownNow();
+    }
+
+    toClose.forEach(this::destroy);
+  }
+
+  Stats stats() {
+    lock.lock();
+    try {
+      return new Stats(total, idle.size(), borrowed.size(), waiting, borrowedCount, createdCount, destroyedCount,
+              timeoutCount, validationFailureCount, leakCount,
+              statementCacheHits.get(), statementCacheMisses.get(), statementCacheEvictions.get());
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  Config getConfig() {
+    return config;
+  }
+
+  /**
+   * total should be already increased for this connection
+   */
+  private PooledConnection createConnection() throws SQLException {
+    try {
+      PooledConnection pc = new PooledConnection(factory.create());
+
+      lock.lock();
+      try {
+        createdCount++;
+      } finally {
+        lock.unlock();
+      }
+
+      return pc;
+    } catch (SQLException | RuntimeException e) {
+      lock.lock();
+      try {
+        total--;
+        available.signal();
+      } finally {
+        lock.unlock();
+      }
+      throw e;
+    }
+  }
+
+  private void markBorrowed(PooledConnection pc) {
+    pc.borrowedAt = System.currentTimeMillis();
+    pc.leakReported = false;
+    if (config.leakDetectionThresholdMillis > 0) {
+      pc.borrowedBy = new Exception("connection borrowed here");
+    }
+
+    lock.lock();
+    try {
+      borrowed.put(pc.conn, pc);
+      borrowedCount++;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private boolean validate(PooledConnection pc) {
+    if (!config.validateOnBorrow) return true;
+
+    try {
+      if (pc.conn.isValid(config.validationTimeoutSeconds)) return true;
+    } catch (SQLException e) {
+      Logger.w("connection validation failed - {}", e.getMessage());
+    }
+
+    lock.lock();
+    try {
+      validationFailureCount++;
+    } finally {
+      lock.unlock();
+    }
+    return false;
+  }
+
+  private void destroy(PooledConnection pc) {
+    Connector.tryClose(pc.conn);
+
+    lock.lock();
+    try {
+      total--;
+      destroyedCount++;
+      available.signal();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private static boolean isClosed(Connection conn) {
+    try {
+      return conn.isClosed();
+    } catch (SQLException e) {
+      return true;
+    }
+  }
+
+  private void housekeep() {
+    try {
+      evictIdle();
+      fillMinSize();
+      detectLeaks();
+    } catch (Exception e) {
+      Logger.w("pool housekeeping failed", e);
+    }
+  }
+
+  private void evictIdle() {
+    if (config.idleTimeoutMillis <= 0) return;
+
+    long now = System.currentTimeMillis();
+    List<PooledConnection> evicted = new ArrayList<>();
+
+    lock.lock();
+    try {
+      // oldest idle connections are at the tail
+      Iterator<PooledConnection> it = idle.descendingIterator();
+      while (it.hasNext() && total - evicted.size() > config.minSize) {
+        PooledConnection pc = it.next();
+        if (now - pc.lastReturnedAt < config.idleTimeoutMillis) break;
+        it.remove();
+        evicted.add(pc);
+      }
+    } finally {
+      lock.unlock();
+    }
+
+    if (!evicted.isEmpty()) {
+      Logger.d("evict {} idle connections", evicted.size());
+    }
+    evicted.forEach(this::destroy);
+  }
+
+  private void fillMinSize() {
+    while (true) {
+      lock.lock();
+      try {
+        if (closed || total >= config.minSize) return;
+        total++;
+      } finally {
+        lock.unlock();
+      }
+
+      PooledConnection pc;
+      try {
+        pc = createConnection();
+      } catch (SQLException e) {
+        Logger.w("fail to fill min pool size - {}", e.getMessage());
+        return;
+      }
+
+      lock.lock();
+      try {
+        idle.addLast(pc);
+        available.signal();
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  private void detectLeaks() {
+    if (config.leakDetectionThresholdMillis <= 0) return;
+
+    long now = System.currentTimeMillis();
+    List<PooledConnection> leaked = new ArrayList<>();
+
+    lock.lock();
+    try {
+      for (PooledConnection pc : borrowed.values()) {
+        if (!pc.leakReported && now - pc.borrowedAt > config.leakDetectionThresholdMillis) {
+          pc.leakReported = true;
+          leakCount++;
+          leaked.add(pc);
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+
+    for (PooledConnection pc : leaked) {
+      // stack trace of the borrower is logged if it exists
+      Logger.w("connection leak detected - borrowed {}ms ago", now - pc.borrowedAt, pc.borrowedBy);
+    }
+  }
+
+}
@@ -2,7 +2,14 @@ package me.zerosquare.simplemodel;
 
 import me.zerosquare.simplemodel.internals.Logger;
 
+import org.slf4j.event.Level;
+
+import javax.sql.DataSource;
 import java.sql.*;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class Connector {
 
@@ -21,9 +28,20 @@ public class Connector {
     private Connection conn;
     private AfterExecuteHandler afterExecutedHandler;
 
-    public CustomConnection(Connection c, AfterExecuteHandler afterExecuteHandler) {
+    /**
+     * null if not used
+     */
+    private IdentityMap identityMap;
+
+    /**
+     * cached tables written with this connection
+     */
+    private Set<String> writtenTables;
+
+    public CustomConnection(Connection c, AfterExecuteHandler afterExecuteHandler, boolean useIdentityMap) {
       this.conn = c;
       this.afterExecutedHandler = afterExecuteHandler;
+      this.identityMap = useIdentityMap ? new IdentityMap() : null;
     }
   }
 
@@ -31,6 +49,22 @@ public class Connector {
   private static String user;
   private static String password;
 
+  /**
+   * If it has a value, connections are obtained from this instead of DriverManager
+   */
+  private static volatile DataSource dataSource;
+
+  /**
+   * If it has a value, connections are borrowed from and returned to this pool
+   */
+  private static volatile ConnectionPool pool;
+
+  /**
+   * level and sampling rate (0.0 ~ 1.0) of SQL logs
+   */
+  private static volatile Level sqlLogLevel = Level.INFO;
+  private static volatile double sqlLogSampleRate = 1.0;
+
   /**
    * If it has a value, that will be used only one time for current thread
    */
@@ -46,13 +80,124 @@ public class Connector {
     Connector.url = url;
     Connector.user = user;
     Connector.password = password;
+    Connector.dataSource = null;
+  }
+
+  /**
+   * Obtain connections from specified DataSource instead of connection info.
+   * If the DataSource pools connections by itself, you don't need to enable built-in connection pool.
+   */
+  public static void setDataSource(DataSource dataSource) {
+    Connector.dataSource = dataSource;
+  }
+
+  /**
+   * Borrow connections from built-in pool instead of opening new connection for every statement.
+   * Existing pool will be closed.
+   */
+  public static void enableConnectionPool(ConnectionPool.Config config) {
+    ConnectionPool old = pool;
+    pool = new ConnectionPool(config, Connector::openDBConnection);
+    if (old != null) {
+      old.close();
+    }
+  }
+
+  public static void disableConnectionPool() {
+    ConnectionPool old = pool;
+    pool = null;
+    if (old != null) {
+      old.close();
+    }
+  }
+
+  /**
+   * @return null if connection pool is not enabled
+   */
+  public static ConnectionPool.Stats getConnectionPoolStats() {
+    ConnectionPool p = pool;
+    return p != null ? p.stats() : null;
+  }
+
+  /**
+   * Log level of prepared SQL statements. INFO by default.
+   */
+  public static void setSqlLogLevel(Level level) {
+    Connector.sqlLogLevel = level;
+  }
+
+  /**
+   * Log only some of SQL statements when the SQL log level is enabled
+   *
+   * @param rate 0.0 (none) ~ 1.0 (all, default)
+   */
+  public static void setSqlLogSampleRate(double rate) {
+    if (rate < 0.0 || rate > 1.0) {
+      throw new IllegalArgumentException(String.format("invalid sample rate: %f", rate));
+    }
+    Connector.sqlLogSampleRate = rate;
+  }
+
+  private static void logSql(String sql) {
+    Level level = sqlLogLevel;
+    if (!Logger.isEnabled(level)) return;
+
+    double rate = sqlLogSampleRate;
+    if (rate < 1.0 && ThreadLocalRandom.current().nextDouble() >= rate) return;
+
+    Logger.log(level, "prepareStatement: {}", sql);
   }
 
   /**
    * Use specified connection for this thread until disable called
    */
   public static void enableCustomConnection(Connection c, AfterExecuteHandler afterExecuteHandler) {
-    threadLocalCustomConnection.set(new CustomConnection(c, afterExecuteHandler));
+    enableCustomConnection(c, afterExecuteHandler, false);
+  }
+
+  /**
+   * Use specified connection for this thread until disable called
+   *
+   * @param useIdentityMap find by id returns the same instance for the same row without a query while enabled
+   */
+  public static void enableCustomConnection(Connection c, AfterExecuteHandler afterExecuteHandler, boolean useIdentityMap) {
+    threadLocalCustomConnection.set(new CustomConnection(c, afterExecuteHandler, useIdentityMap));
+  }
+
+  static boolean isCustomConnectionEnabled() {
+    return threadLocalCustomConnection.get() != null;
+  }
+
+  /**
+   * remember a cached table written in the custom connection of this thread
+   */
+  static void markWritten(String tableName) {
+    CustomConnection customConnection = threadLocalCustomConnection.get();
+    if (customConnection == null) return;
+
+    if (customConnection.writtenTables == null) {
+      customConnection.writtenTables = new HashSet<>();
+    }
+    customConnection.writtenTables.add(tableName);
+  }
+
+  /**
+   * @return cached tables written in the custom connection of this thread
+   */
+  static Set<String> getWrittenTables() {
+    CustomConnection customConnection = threadLocalCustomConnection.get();
+    if (customConnection == null || customConnection.writtenTables == null) {
+      return Collections.emptySet();
+    }
+    return customConnection.writtenTables;
+  }
+
+  /**
+   * @return null if the custom connection of this thread does not use identity map
+   */
+  static IdentityMap getIdentityMap() {
+    CustomConnection customConnection = threadLocalCustomConnection.get();
+    return customConnection != null ? customConnection.identityMap : null;
   }
 
   public static void disableCustomConnection() {
@@ -75,21 +220,71 @@ public class Connector {
         conn = makeDBConnection();
       }
 
-      pst = conn.prepareStatement(sql, returnGeneratedKeys ? Statement.RETURN_GENERATED_KEYS : Statement.NO_GENERATED_KEYS);
-      Logger.i("prepareStatement: %s", sql);
+      pst = makePreparedStatement(conn, sql, returnGeneratedKeys);
+      logSql(sql);
 
       return new Connector(conn, pst, isCustomConnection, afterExecuteHandler);
     } catch (SQLException e) {
-      tryClose(pst);
-      tryClose(conn);
+      releasePreparedStatement(conn, pst);
+      if (!isCustomConnection) {
+        releaseDBConnection(conn);
+      }
       throw e;
     }
   }
 
+  private static PreparedStatement makePreparedStatement(Connection conn, String sql, boolean returnGeneratedKeys) throws SQLException {
+    ConnectionPool p = pool;
+    if (p != null) {
+      return p.prepareStatement(conn, sql, returnGeneratedKeys);
+    }
+    return conn.prepareStatement(sql, returnGeneratedKeys ? Statement.RETURN_GENERATED_KEYS : Statement.NO_GENERATED_KEYS);
+  }
+
+  /**
+   * Return statement to the statement cache if it came from there, otherwise close it
+   */
+  private static void releasePreparedStatement(Connection conn, Statement st) {
+    if (st == null) return;
+
+    ConnectionPool p = pool;
+    if (p != null && st instanceof PreparedStatement) {
+      p.releaseStatement(conn, (PreparedStatement) st);
+    } else {
+      tryClose(st);
+    }
+  }
+
   static Connection makeDBConnection() throws SQLException {
+    ConnectionPool p = pool;
+    if (p != null) {
+      return p.borrow();
+    }
+    return openDBConnection();
+  }
+
+  private static Connection openDBConnection() throws SQLException {
+    DataSource ds = dataSource;
+    if (ds != null) {
+      return ds.getConnection();
+    }
     return DriverManager.getConnection(url, user, password);
   }
 
+  /**
+   * Return connection to the pool, or close it if pool is not enabled
+   */
+  static void releaseDBConnection(Connection conn) {
+    if (conn == null) return;
+
+    ConnectionPool p = pool;
+    if (p != null) {
+      p.release(conn);
+    } else {
+      tryClose(conn);
+    }
+  }
+
   public static void tryClose(AutoCloseable ac) {
     try {
       if (ac != null) {
@@ -113,6 +308,7 @@ public class Connector {
 
   public void executed(boolean success) {
     if (isCustomConnection) {
+      releaseStatement();
       if (afterExecuteHandler != null) {
         afterExecuteHandler.after(conn, success);
       }
@@ -122,8 +318,14 @@ public class Connector {
   }
 
   public void close() {
-    tryClose(stmt);
-    tryClose(conn);
+    releaseStatement();
+    releaseDBConnection(conn);
+    conn = null;
+  }
+
+  private void releaseStatement() {
+    releasePreparedStatement(conn, stmt);
+    stmt = null;
   }
 
 }
@@ -0,0 +1,43 @@
+package me.zerosquare.simplemodel;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Models found by id in a transaction, so that repeated finds of the same row return the same instance without a query.
+ * It is used by a single thread, and discarded when the transaction ends.
+ */
+class IdentityMap {
+
+  /**
+   * table - id - model class - model
+   */
+  private final Map<String, Map<Long, Map<Class<?>, Model>>> tables = new HashMap<>();
+
+  /**
+   * @return null if not loaded yet
+   */
+  <T extends Model> T get(Class<?> clazz, String tableName, long id) {
+    Map<Long, Map<Class<?>, Model>> rows = tables.get(tableName);
+    Map<Class<?>, Model> models = rows != null ? rows.get(id) : null;
+    return models != null ? (T) models.get(clazz) : null;
+  }
+
+  void put(String tableName, long id, Model model) {
+    tables.computeIfAbsent(tableName, k -> new HashMap<>())
+            .computeIfAbsent(id, k -> new HashMap<>())
+            .put(model.getClass(), model);
+  }
+
+  void evict(String tableName, long id) {
+    Map<Long, Map<Class<?>, Model>> rows = tables.get(tableName);
+    if (rows != null) {
+      rows.remove(id);
+    }
+  }
+
+  void evictTable(String tableName) {
+    tables.remove(tableName);
+  }
+
+}
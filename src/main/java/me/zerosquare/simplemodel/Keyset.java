@@ -0,0 +1,239 @@
+package me.zerosquare.simplemodel;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Ordered columns for keyset (seek) pagination, e.g. `(created_at desc, id desc)`.
+ * The last column should be unique (like id) so every row has a distinct key, and key columns should not be null.
+ * Use an index on the same columns to seek pages without scanning skipped rows.
+ */
+public class Keyset {
+
+  public enum Direction {
+    ASC,
+    DESC
+  }
+
+  private static final byte TOKEN_VERSION = 1;
+
+  private final List<String> columns = new ArrayList<>();
+  private final List<Direction> directions = new ArrayList<>();
+
+  /**
+   * all columns in the same direction
+   */
+  public static Keyset of(Direction direction, String... columns) {
+    Keyset keyset = new Keyset();
+    for (String column : columns) {
+      keyset.add(column, direction);
+    }
+    return keyset;
+  }
+
+  public Keyset asc(String column) {
+    return add(column, Direction.ASC);
+  }
+
+  public Keyset desc(String column) {
+    return add(column, Direction.DESC);
+  }
+
+  public Keyset add(String column, Direction direction) {
+    columns.add(column);
+    directions.add(direction);
+    return this;
+  }
+
+  public List<String> getColumns() {
+    return Collections.unmodifiableList(columns);
+  }
+
+  public List<Direction> getDirections() {
+    return Collections.unmodifiableList(directions);
+  }
+
+  int size() {
+    return columns.size();
+  }
+
+  /**
+   * `a > ? or (a = ? and b > ?)`, with leading `a >= ?` so the first column can be used as an index range
+   */
+  String whereAfter() {
+    StringBuilder or = new StringBuilder();
+    for (int i = 0; i < columns.size(); i++) {
+      if (i > 0) or.append(" or ");
+      or.append('(');
+      for (int j = 0; j < i; j++) {
+        or.append(columns.get(j)).append(" = ? and ");
+      }
+      or.append(columns.get(i)).append(directions.get(i) == Direction.ASC ? " > ?" : " < ?");
+      or.append(')');
+    }
+
+    if (columns.size() == 1) {
+      return or.toString();
+    }
+    return String.format("%s %s ? and (%s)", columns.get(0), directions.get(0) == Direction.ASC ? ">=" : "<=", or);
+  }
+
+  /**
+   * parameters of whereAfter
+   */
+  List<Object> whereAfterParams(List<Object> lastValues) {
+    List<Object> params = new ArrayList<>();
+    if (columns.size() > 1) {
+      params.add(lastValues.get(0));
+    }
+    for (int i = 0; i < columns.size(); i++) {
+      for (int j = 0; j <= i; j++) {
+        params.add(lastValues.get(j));
+      }
+    }
+    return params;
+  }
+
+  String orderBy() {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < columns.size(); i++) {
+      if (i > 0) sb.append(", ");
+      sb.append(columns.get(i)).append(' ').append(directions.get(i).name());
+    }
+    return sb.toString();
+  }
+
+  /**
+   * key of a fetched model. columns are looked up without the table name of the model
+   *
+   * @throws IllegalStateException if a key column is not fetched or null
+   */
+  List<Object> valuesOf(Model model) {
+    List<Object> values = new ArrayList<>(columns.size());
+    for (String column : columns) {
+      String key = column.toLowerCase();
+      String prefix = model.getTableName() + ".";
+      if (key.startsWith(prefix)) {
+        key = key.substring(prefix.length());
+      }
+
+      Object v = model.get(key);
+      if (v == null) {
+        throw new IllegalStateException(String.format("keyset column '%s' is not fetched or null", column));
+      }
+      values.add(v);
+    }
+    return values;
+  }
+
+  /**
+   * @return url-safe base64 token of the key values
+   */
+  String encode(List<Object> values) {
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeByte(TOKEN_VERSION);
+      out.writeInt(signature());
+      out.writeByte(values.size());
+      for (Object v : values) {
+        writeValue(out, v);
+      }
+      out.flush();
+      return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * @throws IllegalArgumentException if the token is invalid or made by another keyset
+   */
+  List<Object> decode(String token) {
+    try {
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(Base64.getUrlDecoder().decode(token)));
+      if (in.readByte() != TOKEN_VERSION || in.readInt() != signature()) {
+        throw new IllegalArgumentException("token of another keyset");
+      }
+
+      int n = in.readByte();
+      if (n != columns.size()) {
+        throw new IllegalArgumentException("token of another keyset");
+      }
+
+      List<Object> values = new ArrayList<>(n);
+      for (int i = 0; i < n; i++) {
+        values.add(readValue(in));
+      }
+      return values;
+    } catch (IOException | IllegalStateException e) {
+      throw new IllegalArgumentException(String.format("invalid token: %s", token), e);
+    }
+  }
+
+  private int signature() {
+    return (columns.toString() + directions.toString()).toLowerCase().hashCode();
+  }
+
+  private static void writeValue(DataOutputStream out, Object v) throws IOException {
+    if (v instanceof Integer || v instanceof Long || v instanceof Short || v instanceof Byte) {
+      out.writeByte('L');
+      out.writeLong(((Number) v).longValue());
+    } else if (v instanceof Double || v instanceof Float) {
+      out.writeByte('D');
+      out.writeDouble(((Number) v).doubleValue());
+    } else if (v instanceof BigDecimal) {
+      out.writeByte('N');
+      out.writeUTF(v.toString());
+    } else if (v instanceof String) {
+      out.writeByte('S');
+      out.writeUTF((String) v);
+    } else if (v instanceof Timestamp) {
+      out.writeByte('T');
+      out.writeLong(((Timestamp) v).getTime());
+      out.writeInt(((Timestamp) v).getNanos());
+    } else if (v instanceof java.sql.Date) {
+      out.writeByte('d');
+      out.writeUTF(v.toString());
+    } else if (v instanceof Boolean) {
+      out.writeByte('B');
+      out.writeBoolean((Boolean) v);
+    } else {
+      throw new IllegalStateException(String.format("unsupported keyset value type: %s", v.getClass().getName()));
+    }
+  }
+
+  private static Object readValue(DataInputStream in) throws IOException {
+    byte type = in.readByte();
+    switch (type) {
+      case 'L':
+        return in.readLong();
+      case 'D':
+        return in.readDouble();
+      case 'N':
+        return new BigDecimal(in.readUTF());
+      case 'S':
+        return in.readUTF();
+      case 'T':
+        Timestamp t = new Timestamp(in.readLong());
+        t.setNanos(in.readInt());
+        return t;
+      case 'd':
+        return java.sql.Date.valueOf(in.readUTF());
+      case 'B':
+        return in.readBoolean();
+      default:
+        throw new IllegalStateException(String.format("unknown value type: %d", type));
+    }
+  }
+
+}
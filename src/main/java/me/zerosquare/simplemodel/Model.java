@@ -1,30 +1,47 @@
 package me.zerosquare.simplemodel;
 
-import me.zerosquare.simplemodel.annotations.Table;
 import me.zerosquare.simplemodel.exceptions.ConstructionException;
+import me.zerosquare.simplemodel.exceptions.CursorException;
 import me.zerosquare.simplemodel.internals.Logger;
+import me.zerosquare.simplemodel.metrics.QueryEvent;
+import me.zerosquare.simplemodel.metrics.QueryListener;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
 
-import java.lang.annotation.Annotation;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Timestamp;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 /**
  * Use this class directly, or extends this class to use ORM.
  */
 public class Model {
 
+  private static final CopyOnWriteArrayList<QueryListener> queryListeners = new CopyOnWriteArrayList<>();
+
+  /**
+   * bound parameters of the executing query of this thread, only while listeners exist
+   */
+  private static final ThreadLocal<List<Object>> capturedParameters = new ThreadLocal<>();
+  private static final int MAX_CAPTURED_PARAMETERS = 256;
+
   String tableName;
 
   ModelData data = new ModelData();
@@ -37,6 +54,25 @@ public class Model {
   private String reservedOrderby = "";
   private String reservedLimit = "";
   private String reservedOffset = "";
+  private Integer reservedFetchSize = null;
+  private boolean reservedCompactStorage = false;
+  private List<String> reservedIncludes = Collections.emptyList();
+
+  /**
+   * when the statement is executed and mapping started, for query metrics. 0 if not marked
+   */
+  private long executedAtNanos;
+
+  /**
+   * Listen to every query executed by models. See metrics.InMemoryQueryMetrics
+   */
+  public static void addQueryListener(QueryListener listener) {
+    queryListeners.add(listener);
+  }
+
+  public static void removeQueryListener(QueryListener listener) {
+    queryListeners.remove(listener);
+  }
 
   public static Model table(String tableName) {
     return new Model(tableName);
@@ -51,13 +87,9 @@ public class Model {
   }
 
   private void trySetTableNameFromAnnotation() {
-    for (Class c = this.getClass(); c != null && c != Object.class; c = c.getSuperclass()) {
-      if (c.isAnnotationPresent(Table.class)) {
-        Annotation annotation = c.getAnnotation(Table.class);
-        Table bc = (Table) annotation;
-        this.tableName = bc.name().toLowerCase();
-        break;
-      }
+    String name = ModelMetadata.of(getClass()).getTableName();
+    if (name != null) {
+      this.tableName = name;
     }
   }
 
@@ -84,22 +116,378 @@ public class Model {
             StringUtils.join(colnames.stream().map(e -> "?").toArray(), ','));
 
     return execute(queryType, q, pst -> {
-      addParameters(pst, 0, colvals);
+      bindColumnValues(pst, 0, colnames, colvals);
 
       pst.executeUpdate();
-      ResultSet rs = pst.getGeneratedKeys();
-      if (rs.next()) {
-        long generatedId = rs.getLong(1);
+      try (ResultSet rs = pst.getGeneratedKeys()) {
+        if (rs.next()) {
+          long generatedId = rs.getLong(1);
 
-        data.putId(generatedId);
+          data.putId(generatedId);
 
-        return ExecuteResult.of(true, generatedId);
+          return ExecuteResult.of(true, generatedId).withRows(1);
+        }
       }
 
-      return ExecuteResult.of(true, 0L);
+      return ExecuteResult.of(true, 0L).withRows(1);
     });
   }
 
+  public static final int DEFAULT_BATCH_SIZE = 1000;
+
+  /**
+   * Create all models with JDBC batch.
+   *
+   * @return generated ids in the order of models (0 if not exists)
+   * @see #createAll(List, int)
+   */
+  public static <T extends Model> long[] createAll(List<T> models) throws Exception {
+    return createAll(models, DEFAULT_BATCH_SIZE);
+  }
+
+  /**
+   * Create all models with JDBC batch.
+   * Models having the same table and the same column set are inserted by a single statement, at most batchSize rows per batch.
+   * Generated ids are stored into each model, and before/after hooks are invoked for each model.
+   *
+   * @return generated ids in the order of models (0 if not exists)
+   */
+  public static <T extends Model> long[] createAll(List<T> models, int batchSize) throws Exception {
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("batchSize should be positive");
+    }
+
+    long[] ids = new long[models.size()];
+
+    for (BatchGroup group : groupForBatch(models, QueryType.INSERT, false)) {
+      List<Integer> indexes = group.indexes;
+
+      for (int from = 0; from < indexes.size(); from += batchSize) {
+        List<Integer> chunk = indexes.subList(from, Math.min(from + batchSize, indexes.size()));
+        Model first = models.get(chunk.get(0));
+
+        String q = String.format("INSERT INTO %s(%s) VALUES(%s)", first.tableName,
+                StringUtils.join(group.colnames, ','),
+                StringUtils.join(group.colnames.stream().map(e -> "?").toArray(), ','));
+
+        boolean success = false;
+        try {
+          first.execute(QueryType.INSERT, false, q, pst -> {
+            for (int idx : chunk) {
+              ((Model) models.get(idx)).bindColumnValues(pst, 0, group.colnames, group.values.get(idx));
+              pst.addBatch();
+            }
+            pst.executeBatch();
+
+            try (ResultSet rs = pst.getGeneratedKeys()) {
+              for (int idx : chunk) {
+                if (!rs.next()) break;
+                ids[idx] = rs.getLong(1);
+                models.get(idx).data.putId(ids[idx]);
+              }
+            }
+
+            return ExecuteResult.of(true, null).withRows(chunk.size());
+          });
+          success = true;
+        } finally {
+          for (int idx : chunk) {
+            models.get(idx)._afterExecute(QueryType.INSERT, success);
+          }
+        }
+      }
+    }
+
+    return ids;
+  }
+
+  /**
+   * Maximum number of placeholders in a prepared statement of MySQL
+   */
+  public static final int DEFAULT_MAX_PARAMETERS = 65535;
+
+  /**
+   * Create all models with multi-row VALUES statements.
+   *
+   * @return generated ids in the order of models (0 if not exists)
+   * @see #bulkCreate(List, int)
+   */
+  public static <T extends Model> long[] bulkCreate(List<T> models) throws Exception {
+    return bulkCreate(models, DEFAULT_MAX_PARAMETERS);
+  }
+
+  /**
+   * Create all models with multi-row VALUES statements - `INSERT INTO t(a,b) VALUES (?,?),(?,?),...`.
+   * It is usually faster than JDBC batch, unless the driver rewrites batches by itself.
+   * Models having the same table and the same column set are chunked so that each statement has at most maxParameters parameters.
+   * Generated ids are stored into each model, and before/after hooks are invoked for each model.
+   *
+   * Note that generated ids of a statement are a consecutive range on MySQL only if innodb_autoinc_lock_mode is not 2 (interleaved).
+   *
+   * @return generated ids in the order of models (0 if not exists)
+   */
+  public static <T extends Model> long[] bulkCreate(List<T> models, int maxParameters) throws Exception {
+    if (maxParameters < 1) {
+      throw new IllegalArgumentException("maxParameters should be positive");
+    }
+
+    long[] ids = new long[models.size()];
+
+    for (BatchGroup group : groupForBatch(models, QueryType.INSERT, false)) {
+      List<Integer> indexes = group.indexes;
+      int rowsPerStatement = Math.max(1, maxParameters / Math.max(1, group.colnames.size()));
+
+      String row = String.format("(%s)", StringUtils.join(group.colnames.stream().map(e -> "?").toArray(), ','));
+
+      for (int from = 0; from < indexes.size(); from += rowsPerStatement) {
+        List<Integer> chunk = indexes.subList(from, Math.min(from + rowsPerStatement, indexes.size()));
+        Model first = models.get(chunk.get(0));
+
+        String q = String.format("INSERT INTO %s(%s) VALUES %s", first.tableName,
+                StringUtils.join(group.colnames, ','),
+                StringUtils.join(Collections.nCopies(chunk.size(), row), ','));
+
+        boolean success = false;
+        try {
+          first.execute(QueryType.INSERT, false, q, pst -> {
+            int last = 0;
+            for (int idx : chunk) {
+              last = ((Model) models.get(idx)).bindColumnValues(pst, last, group.colnames, group.values.get(idx));
+            }
+            pst.executeUpdate();
+
+            try (ResultSet rs = pst.getGeneratedKeys()) {
+              for (int idx : chunk) {
+                if (!rs.next()) break;
+                ids[idx] = rs.getLong(1);
+                models.get(idx).data.putId(ids[idx]);
+              }
+            }
+
+            return ExecuteResult.of(true, null).withRows(chunk.size());
+          });
+          success = true;
+        } finally {
+          for (int idx : chunk) {
+            models.get(idx)._afterExecute(QueryType.INSERT, success);
+          }
+        }
+      }
+    }
+
+    return ids;
+  }
+
+  /**
+   * Update all models with JDBC batch.
+   *
+   * @return affected row count
+   * @see #updateAll(List, boolean, int)
+   */
+  public static <T extends Model> long updateAll(List<T> models) throws Exception {
+    return updateAll(models, false, DEFAULT_BATCH_SIZE);
+  }
+
+  /**
+   * Update all models by id with JDBC batch - `UPDATE t SET a=?,b=? WHERE id=?`.
+   * Models having the same table and the same column set are updated by a single statement, at most batchSize rows per batch.
+   * Models having nothing to update are skipped. Where clauses of the models are not used.
+   * Before/after hooks are invoked for each model.
+   *
+   * @return affected row count
+   * @throws IllegalArgumentException if a model has no id, before any statement is executed
+   */
+  public static <T extends Model> long updateAll(List<T> models, boolean updateModifiedOnly, int batchSize) throws Exception {
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("batchSize should be positive");
+    }
+    requireIds(models);
+
+    long rows = 0;
+
+    for (BatchGroup group : groupForBatch(models, QueryType.UPDATE, updateModifiedOnly)) {
+      List<Integer> indexes = group.indexes;
+
+      for (int from = 0; from < indexes.size(); from += batchSize) {
+        List<Integer> chunk = indexes.subList(from, Math.min(from + batchSize, indexes.size()));
+        Model first = models.get(chunk.get(0));
+
+        String q = String.format("UPDATE %s SET %s WHERE id=?", first.tableName,
+                StringUtils.join(group.colnames.stream().map(c -> String.format("%s=?", c)).toArray(), ','));
+        List<Long> ids = new ArrayList<>(chunk.size());
+        for (int idx : chunk) {
+          ids.add(models.get(idx).getId());
+        }
+        evictCachedRows(first.tableName, ids);
+
+        boolean success = false;
+        try {
+          rows += first.execute(QueryType.UPDATE, false, q, pst -> {
+            for (int idx : chunk) {
+              int last = ((Model) models.get(idx)).bindColumnValues(pst, 0, group.colnames, group.values.get(idx));
+              addParameters(pst, last, Collections.singletonList(models.get(idx).getId()));
+              pst.addBatch();
+            }
+
+            long affected = 0;
+            for (int count : pst.executeBatch()) {
+              // SUCCESS_NO_INFO if the driver does not know
+              affected += count == Statement.SUCCESS_NO_INFO ? 1 : Math.max(count, 0);
+            }
+            return ExecuteResult.of(true, affected).withRows(affected);
+          });
+          success = true;
+        } finally {
+          evictCachedRows(first.tableName, ids);
+          for (int idx : chunk) {
+            models.get(idx)._afterExecute(QueryType.UPDATE, success);
+          }
+        }
+      }
+    }
+
+    return rows;
+  }
+
+  /**
+   * Maximum number of ids in an `id IN (...)` statement
+   */
+  public static final int DEFAULT_IN_CHUNK_SIZE = 1000;
+
+  /**
+   * Delete all models by `id IN (...)` statements.
+   *
+   * @return affected row count
+   * @see #deleteAll(List, int)
+   */
+  public static <T extends Model> long deleteAll(List<T> models) throws Exception {
+    return deleteAll(models, DEFAULT_IN_CHUNK_SIZE);
+  }
+
+  /**
+   * Delete all models by `id IN (...)` statements of at most chunkSize ids, grouped by class and table.
+   * Models of SoftDeleteModel are soft deleted in bulk as well, without hooks as SoftDeleteModel.delete().
+   * Where clauses of the models are not used. Before/after hooks are invoked for each model, chunk by chunk.
+   *
+   * @return affected row count
+   * @throws IllegalArgumentException if a model has no id, before any statement is executed
+   * @see #deleteByIds(Collection, int)
+   */
+  public static <T extends Model> long deleteAll(List<T> models, int chunkSize) throws Exception {
+    if (chunkSize < 1) {
+      throw new IllegalArgumentException("chunkSize should be positive");
+    }
+    requireIds(models);
+
+    Map<String, List<T>> groups = new LinkedHashMap<>();
+    for (T m : models) {
+      groups.computeIfAbsent(m.getClass().getName() + "|" + m.tableName, k -> new ArrayList<>()).add(m);
+    }
+
+    long rows = 0;
+
+    for (List<T> group : groups.values()) {
+      // a fresh query without the default where of the models
+      Model first = group.get(0);
+      Model query = first.newInstance();
+      query.tableName = first.tableName;
+      boolean hooks = first.isDeleteHooked();
+
+      for (int from = 0; from < group.size(); from += chunkSize) {
+        List<T> chunk = group.subList(from, Math.min(from + chunkSize, group.size()));
+        List<Long> ids = new ArrayList<>(chunk.size());
+        for (T m : chunk) {
+          if (hooks) {
+            m._beforeExecute(QueryType.DELETE);
+          }
+          ids.add(m.getId());
+        }
+
+        boolean success = false;
+        try {
+          rows += query.deleteByIds(ids, chunkSize);
+          success = true;
+        } finally {
+          if (hooks) {
+            for (T m : chunk) {
+              m._afterExecute(QueryType.DELETE, success);
+            }
+          }
+        }
+      }
+    }
+
+    return rows;
+  }
+
+  /**
+   * Whether delete() invokes before/after hooks. Soft delete does not.
+   */
+  protected boolean isDeleteHooked() {
+    return true;
+  }
+
+  /**
+   * Models are executed by id, so a model without id would bind NULL instead of the default where of update/delete
+   */
+  private static <T extends Model> void requireIds(List<T> models) {
+    for (T m : models) {
+      m.data.columnValuesFromAnnotation(m);
+      if (m.getId() == null) {
+        throw new IllegalArgumentException("no where clause specified!");
+      }
+    }
+  }
+
+  /**
+   * Models to be executed by the same statement
+   */
+  private static class BatchGroup {
+    private final List<String> colnames;
+    private final List<Integer> indexes = new ArrayList<>();
+    private final Map<Integer, List<Object>> values = new HashMap<>();
+
+    private BatchGroup(List<String> colnames) {
+      this.colnames = colnames;
+    }
+  }
+
+  /**
+   * invokes before hooks, and groups models by table and column set
+   */
+  private static <T extends Model> Collection<BatchGroup> groupForBatch(List<T> models, QueryType queryType,
+                                                                        boolean modifiedColumnsOnly) throws Exception {
+    Map<String, BatchGroup> groups = new LinkedHashMap<>();
+
+    for (int i = 0; i < models.size(); i++) {
+      Model m = models.get(i);
+      m._beforeExecute(queryType);
+
+      Pair<ArrayList<String>, ArrayList<Object>> nvs = m.data.buildColumnNameAndValues(queryType, modifiedColumnsOnly);
+      ArrayList<String> colnames = nvs.getLeft();
+      ArrayList<Object> colvals = nvs.getRight();
+
+      if (queryType == QueryType.UPDATE && colnames.isEmpty()) {
+        Logger.w("nothing to update - id: {}", m.getId());
+        continue;
+      }
+
+      String key = m.tableName + "|" + StringUtils.join(new TreeSet<>(colnames), ',');
+      BatchGroup group = groups.computeIfAbsent(key, k -> new BatchGroup(colnames));
+
+      // column order of the group may differ from this model
+      List<Object> vals = new ArrayList<>(colvals.size());
+      for (String colname : group.colnames) {
+        vals.add(colvals.get(colnames.indexOf(colname)));
+      }
+
+      group.indexes.add(i);
+      group.values.put(i, vals);
+    }
+
+    return groups.values();
+  }
+
   public <T extends Model> T select(String selectClause, Object... args) {
     reservedSelect = String.format(selectClause, args);
     return (T) this;
@@ -132,6 +520,36 @@ public class Model {
     return (T) this;
   }
 
+  /**
+   * Set fetch size hint of the statement. Use Integer.MIN_VALUE to stream rows one by one with MySQL driver.
+   */
+  public <T extends Model> T fetchSize(int rows) {
+    reservedFetchSize = rows;
+    return (T) this;
+  }
+
+  /**
+   * Load associations (fields with BelongsTo or HasMany) of fetched models by field names.
+   * Each association is loaded by an `IN` query of keys of all fetched models, instead of a query for each model.
+   * It is applied to fetch and find, not to cursors or scans.
+   */
+  public <T extends Model> T includes(String... associations) {
+    List<String> includes = new ArrayList<>(reservedIncludes);
+    includes.addAll(Arrays.asList(associations));
+    reservedIncludes = includes;
+    return (T) this;
+  }
+
+  /**
+   * Store column values of fetched models in compact arrays instead of hash maps.
+   * Rows of the same query share column names, so it saves memory a lot for large results.
+   * Column values are still accessed by names.
+   */
+  public <T extends Model> T compactStorage(boolean enable) {
+    reservedCompactStorage = enable;
+    return (T) this;
+  }
+
   /**
    * Set where clause.
    * If you don't set where clause, default where clause will be used. (id=?)
@@ -161,6 +579,216 @@ public class Model {
   public <T extends Model> List<T> fetch() throws Exception {
     QueryType queryType = QueryType.SELECT;
 
+    String q = buildSelectQuery();
+
+    List<T> models = execute(queryType, q, pst -> {
+      addParameters(pst, 0, reservedWhereParams);
+      applyFetchSize(pst);
+
+      try (ResultSet rs = pst.executeQuery()) {
+        markExecuted();
+        ColumnLayout layout = ColumnLayout.of(q, tableName, rs);
+        ArrayList<T> rows = new ArrayList<>();
+
+        while (rs.next()) {
+          rows.add(mapRow(rs, layout));
+        }
+
+        return ExecuteResult.of(true, (List<T>) rows).withRows(rows.size());
+      } finally {
+        restoreFetchSize(pst);
+      }
+    });
+
+    // after the connection of this query is released
+    if (models != null && !reservedIncludes.isEmpty()) {
+      Associations.load(models, reservedIncludes);
+    }
+    return models;
+  }
+
+  /**
+   * Open a cursor to iterate fetched models one by one, without loading all rows into memory.
+   * The connection is held until the cursor is closed, so use it with try-with-resources.
+   * Use with fetchSize to control how many rows the driver buffers.
+   */
+  public <T extends Model> ModelCursor<T> cursor() throws Exception {
+    String q = buildSelectQuery();
+    Connector c = null;
+    ModelCursor<T> cursor = null;
+    Exception error = null;
+
+    // the query event is fired when the cursor is closed
+    boolean measure = !queryListeners.isEmpty();
+    long startedAt = measure ? System.nanoTime() : 0;
+    long preparedAt = 0;
+    List<Object> outerParameters = measure ? beginCapture() : null;
+
+    try {
+      c = Connector.prepareStatement(q, true);
+      PreparedStatement pst = c.getPreparedStatement();
+      if (measure) preparedAt = System.nanoTime();
+
+      addParameters(pst, 0, reservedWhereParams);
+      applyFetchSize(pst);
+
+      ResultSet rs = pst.executeQuery();
+      cursor = new ModelCursor<>(this, c, rs, ColumnLayout.of(q, tableName, rs));
+    } catch (Exception e) {
+      if (e instanceof SQLException) {
+        Logger.e("fail to execute", e);
+      }
+      if (c != null) {
+        restoreFetchSize(c.getPreparedStatement());
+        c.executed(false);
+      }
+      error = e;
+      throw e;
+    } finally {
+      if (measure) {
+        List<Object> parameters = endCapture(outerParameters);
+        if (cursor != null) {
+          cursor.measure(tableName, q, parameters, startedAt, preparedAt);
+        } else {
+          fireQueryEvent(QueryType.SELECT, tableName, q, parameters, startedAt, preparedAt, 0, -1, error);
+        }
+      }
+    }
+    return cursor;
+  }
+
+  /**
+   * Stream of fetched models, see cursor. The stream should be closed.
+   */
+  public <T extends Model> Stream<T> stream() throws Exception {
+    ModelCursor<T> cursor = cursor();
+    return cursor.stream();
+  }
+
+  @FunctionalInterface
+  public interface ModelConsumer<T extends Model> {
+    void accept(T model) throws Exception;
+  }
+
+  /**
+   * Fetch models one by one and pass to consumer, see cursor.
+   * Resources are released when this method returns.
+   */
+  public <T extends Model> void forEach(ModelConsumer<T> consumer) throws Exception {
+    try (ModelCursor<T> cursor = cursor()) {
+      while (cursor.hasNext()) {
+        consumer.accept(cursor.next());
+      }
+    } catch (CursorException e) {
+      if (e.getCause() instanceof Exception) {
+        throw (Exception) e.getCause();
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Scan whole rows of this query in parallel by id ranges, for backfills and batch jobs.
+   * Models are passed to the consumer on the calling thread, in no particular order.
+   * Ranges are fetched on other threads, so they do not join the transaction of the calling thread.
+   *
+   * @return number of consumed models
+   */
+  public <T extends Model> long parallelScan(ParallelScan.Config config, ModelConsumer<T> consumer) throws Exception {
+    return ParallelScan.run(this, config, consumer);
+  }
+
+  /**
+   * Copy of this query - table, clauses and parameters - to run the same query again separately (e.g. on other threads).
+   * Column values are not copied. Override to copy query state of subclasses.
+   */
+  protected <T extends Model> T copyQuery() throws ConstructionException {
+    Model copy = newInstance();
+    copy.tableName = tableName;
+    copy.reservedWhere = reservedWhere;
+    copy.reservedWhereParams = new ArrayList<>(reservedWhereParams);
+    copy.reservedSelect = reservedSelect;
+    copy.reservedJoin = reservedJoin;
+    copy.reservedOrderby = reservedOrderby;
+    copy.reservedLimit = reservedLimit;
+    copy.reservedOffset = reservedOffset;
+    copy.reservedFetchSize = reservedFetchSize;
+    copy.reservedCompactStorage = reservedCompactStorage;
+    copy.reservedIncludes = reservedIncludes;
+    return (T) copy;
+  }
+
+  boolean isLimited() {
+    return !reservedLimit.isEmpty() || !reservedOffset.isEmpty();
+  }
+
+  @FunctionalInterface
+  public interface RowConsumer {
+    void accept(ScanRow row) throws Exception;
+  }
+
+  /**
+   * Read-only scan for analytics. Unlike fetch, no model is made for each row.
+   * A single ScanRow is reused for all rows, reading columns from the ResultSet directly,
+   * so scanning does not allocate per row except values like String.
+   * Note that ORM fields and hooks are not used.
+   *
+   * @return number of scanned rows
+   */
+  public long scan(RowConsumer consumer) throws Exception {
+    String q = buildSelectQuery();
+
+    return execute(QueryType.SELECT, q, pst -> {
+      addParameters(pst, 0, reservedWhereParams);
+      applyFetchSize(pst);
+
+      try (ResultSet rs = pst.executeQuery()) {
+        markExecuted();
+        ScanRow row = new ScanRow(tableName, rs);
+
+        while (rs.next()) {
+          row.next();
+          consumer.accept(row);
+        }
+
+        return ExecuteResult.of(true, row.getRowNumber()).withRows(row.getRowNumber());
+      } finally {
+        restoreFetchSize(pst);
+      }
+    });
+  }
+
+  /**
+   * Fetch all rows into column arrays for aggregation in Java.
+   * No model is made, so ORM fields and hooks are not used.
+   */
+  public ColumnarResult fetchColumns() throws Exception {
+    String q = buildSelectQuery();
+
+    return execute(QueryType.SELECT, q, pst -> {
+      addParameters(pst, 0, reservedWhereParams);
+      applyFetchSize(pst);
+
+      try (ResultSet rs = pst.executeQuery()) {
+        markExecuted();
+        ColumnarResult result = ColumnarResult.read(rs, ColumnLayout.of(q, tableName, rs));
+        return ExecuteResult.of(true, result).withRows(result.size());
+      } finally {
+        restoreFetchSize(pst);
+      }
+    });
+  }
+
+  /**
+   * Override this method to add conditions to select queries (fetch, cursor and so on).
+   * It is called every time a select query is built.
+   */
+  protected void beforeSelect() {
+  }
+
+  String buildSelectQuery() {
+    beforeSelect();
+
     String q = String.format("SELECT %s from %s",
             reservedSelect.isEmpty() ? "*" : reservedSelect,
             tableName);
@@ -179,25 +807,46 @@ public class Model {
     if (!reservedOffset.isEmpty()) {
       q += String.format(" OFFSET %s", reservedOffset);
     }
+    return q;
+  }
 
-    return execute(queryType, q, pst -> {
-      addParameters(pst, 0, reservedWhereParams);
-      ResultSet rs = pst.executeQuery();
-      ArrayList<T> models = new ArrayList<>();
-
-      while (rs.next()) {
-        Map<String, Object> colvals = data.getColumnValuesFromResultSet(tableName, rs);
+  /**
+   * make a model from current row of the ResultSet
+   */
+  <T> T mapRow(ResultSet rs, ColumnLayout layout) throws Exception {
+    Map<String, Object> colvals = layout.read(rs, reservedCompactStorage);
+
+    T t = newInstance();
+    Model model = (Model) t;
+    model.tableName = tableName;
+    model.data.setColumnValues(colvals);
+
+    // typed fields are read from the ResultSet directly, instead of from the column values
+    ModelMapper<Model> mapper = ModelMetadata.of(getClass()).getMapper();
+    if (mapper != null) {
+      mapper.read(model, rs, layout.columnsOf(mapper));
+    }
+    model._afterExecute(QueryType.SELECT, true, mapper != null);
+    return t;
+  }
 
-        T model = newInstance();
-        model.tableName = tableName;
-        model.data.setColumnValues(colvals);
-        model._afterExecute(queryType, true);
+  private void applyFetchSize(PreparedStatement pst) throws SQLException {
+    if (reservedFetchSize != null) {
+      pst.setFetchSize(reservedFetchSize);
+    }
+  }
 
-        models.add(model);
-      }
+  /**
+   * statement could be cached and reused by other queries, so restore the default fetch size
+   */
+  void restoreFetchSize(PreparedStatement pst) {
+    if (reservedFetchSize == null || pst == null) return;
 
-      return ExecuteResult.of(true, (List<T>) models);
-    });
+    try {
+      pst.setFetchSize(0);
+    } catch (SQLException e) {
+      Logger.w("fail to restore fetch size - {}", e.getMessage());
+    }
   }
 
   /**
@@ -210,20 +859,270 @@ public class Model {
     return fetched.isEmpty() ? null : (T) fetched.get(0);
   }
 
+  /**
+   * Keyset pagination by a unique column in ascending order. Unlike offset, it does not scan rows of previous pages.
+   *
+   * @param lastValue value of the column of the last item of the previous page, null for the first page
+   */
+  public <T extends Model> Page<T> pageAfter(String column, Object lastValue, int size) throws Exception {
+    return pageAfter(Keyset.of(Keyset.Direction.ASC, column),
+            lastValue != null ? Collections.singletonList(lastValue) : null, size);
+  }
+
+  /**
+   * Keyset pagination, continuing from the token of the previous page
+   *
+   * @param token Page.getNextToken() of the previous page, null for the first page
+   * @throws IllegalArgumentException if the token is invalid or made by another keyset
+   */
+  public <T extends Model> Page<T> page(Keyset keyset, String token, int size) throws Exception {
+    return pageAfter(keyset, token != null ? keyset.decode(token) : null, size);
+  }
+
+  /**
+   * Keyset pagination. Order and limit are made by the keyset, and this query is not changed,
+   * so it can be reused for next pages. Keyset columns should be selected.
+   *
+   * @param lastValues key values of the last item of the previous page, null for the first page
+   * @throws IllegalArgumentException if this query has order, limit or offset
+   */
+  public <T extends Model> Page<T> pageAfter(Keyset keyset, List<Object> lastValues, int size) throws Exception {
+    if (size <= 0) {
+      throw new IllegalArgumentException(String.format("invalid page size: %d", size));
+    }
+    if (!reservedOrderby.isEmpty() || isLimited()) {
+      throw new IllegalArgumentException("keyset pagination cannot be used with order, limit or offset");
+    }
+
+    Model query = copyQuery();
+    if (lastValues != null) {
+      if (lastValues.size() != keyset.size()) {
+        throw new IllegalArgumentException(String.format("keyset has %d columns but %d values given", keyset.size(), lastValues.size()));
+      }
+      query.where("(" + keyset.whereAfter() + ")", keyset.whereAfterParams(lastValues).toArray());
+    }
+    query.reservedOrderby = keyset.orderBy();
+    // one more row to know whether the next page exists
+    query.limit(size + 1);
+
+    List<T> items = query.fetch();
+    boolean hasNext = items.size() > size;
+    if (hasNext) {
+      items = new ArrayList<>(items.subList(0, size));
+    }
+
+    List<Object> last = items.isEmpty() ? Collections.emptyList() : keyset.valuesOf(items.get(items.size() - 1));
+    return new Page<>(items, hasNext, last, hasNext ? keyset.encode(last) : null);
+  }
+
   /**
    * @return null if no result
    */
   public <T extends Model> T findBy(String whereClause, Object... args) throws Exception {
+    if (isFindById(whereClause, args)) {
+      return find(((Number) args[0]).longValue());
+    }
+
     List<T> r = where(whereClause, args).limit(1).fetch();
     if (r == null || r.isEmpty()) return null;
     return r.get(0);
   }
 
+  private static final Pattern findByIdPattern = Pattern.compile("\\s*(?:(\\w+)\\.)?id\\s*=\\s*\\?\\s*", Pattern.CASE_INSENSITIVE);
+
   /**
+   * `id = ?` or `{this table}.id = ?` with an integral number. Others are compared by the database
+   */
+  private boolean isFindById(String whereClause, Object[] args) {
+    if (args.length != 1 || !isIntegral(args[0])) return false;
+
+    Matcher m = findByIdPattern.matcher(whereClause);
+    return m.matches() && (m.group(1) == null || m.group(1).equalsIgnoreCase(tableName));
+  }
+
+  private static boolean isIntegral(Object o) {
+    return o instanceof Long || o instanceof Integer || o instanceof Short || o instanceof Byte;
+  }
+
+  /**
+   * In Transaction.executeWithIdentityMap, the same instance is returned for the same row without a query.
+   * Out of transactions, rows of classes annotated with Cached are read through ModelCache.
+   *
    * @return null if no result
    */
   public <T extends Model> T find(long id) throws Exception {
-    return findBy(makeWhereWithFindId(id));
+    if (!isCacheableFind()) {
+      return fetchById(id);
+    }
+
+    IdentityMap identityMap = Connector.getIdentityMap();
+    if (identityMap != null) {
+      T cached = identityMap.get(getClass(), tableName, id);
+      if (cached != null) return cached;
+
+      T found = fetchById(id);
+      if (found != null) {
+        identityMap.put(tableName, id, found);
+      }
+      return found;
+    }
+
+    // transactions may see their own uncommitted changes
+    ModelCache cache = Connector.isCustomConnectionEnabled() ? null : ModelMetadata.of(getClass()).getCache();
+    if (cache != null) {
+      long version = cache.version();
+      Map<String, Object> cached = cache.get(id);
+      if (cached != null) return fromColumnValues(cached);
+
+      T found = fetchById(id);
+      if (found != null) {
+        cache.put(id, found.getColumnValues(), version);
+      }
+      return found;
+    }
+
+    return fetchById(id);
+  }
+
+  /**
+   * The id is bound as a parameter, so the statement and the column layout are shared by all ids
+   */
+  private <T extends Model> T fetchById(long id) throws Exception {
+    List<T> r = where(makeWhereWithFindId(), id).limit(1).fetch();
+    if (r == null || r.isEmpty()) return null;
+    return r.get(0);
+  }
+
+  /**
+   * make a model as fetched from the column values
+   */
+  private <T> T fromColumnValues(Map<String, Object> columnValues) throws Exception {
+    T t = newInstance();
+    Model model = (Model) t;
+    model.tableName = tableName;
+    model.data.setColumnValues(new HashMap<>(columnValues));
+    model._afterExecute(QueryType.SELECT, true);
+    return t;
+  }
+
+  /**
+   * Whether find by id can use the identity map of the transaction and the second-level cache.
+   * Override this if the model filters rows by itself.
+   *
+   * @return true for plain queries without where, join, select or includes
+   */
+  protected boolean isCacheableFind() {
+    return reservedWhere.isEmpty() && StringUtils.isBlank(reservedJoin) &&
+            reservedSelect.isEmpty() && reservedIncludes.isEmpty();
+  }
+
+  /**
+   * Evict rows to be updated or deleted by this query from the identity map of the transaction and the second-level cache.
+   * Called before and after the write, since a concurrent find may read the old row before the write and cache it after
+   * the first eviction.
+   */
+  private void evictCachedRows() {
+    Long id = data.getId();
+    if (id != null && isDefaultWhereForUpdate(id)) {
+      evictCachedRows(tableName, Collections.singletonList(id));
+      return;
+    }
+
+    IdentityMap identityMap = Connector.getIdentityMap();
+    if (identityMap != null) {
+      identityMap.evictTable(tableName);
+    }
+
+    ModelCache cache = ModelCache.forTable(tableName);
+    if (cache != null) {
+      cache.invalidateAll();
+      Connector.markWritten(tableName);
+    }
+  }
+
+  private boolean isDefaultWhereForUpdate(long id) {
+    return reservedWhere.equals(makeWhereWithFindId()) && reservedWhereParams.size() == 1 &&
+            Long.valueOf(id).equals(reservedWhereParams.get(0));
+  }
+
+  private static void evictCachedRows(String tableName, Collection<?> ids) {
+    IdentityMap identityMap = Connector.getIdentityMap();
+    ModelCache cache = ModelCache.forTable(tableName);
+    if (identityMap == null && cache == null) return;
+
+    for (Object id : ids) {
+      if (id == null) continue;
+
+      long key = ((Number) id).longValue();
+      if (identityMap != null) identityMap.evict(tableName, key);
+      if (cache != null) cache.invalidate(key);
+    }
+
+    if (cache != null) {
+      Connector.markWritten(tableName);
+    }
+  }
+
+  /**
+   * @return models in the order of ids, null for ids not found
+   * @see #findMap(Collection, int)
+   */
+  public <T extends Model> List<T> findAll(Collection<Long> ids) throws Exception {
+    Map<Long, T> found = findMap(ids, DEFAULT_IN_CHUNK_SIZE);
+
+    List<T> result = new ArrayList<>(ids.size());
+    for (Long id : ids) {
+      result.add(found.get(id));
+    }
+    return result;
+  }
+
+  /**
+   * @see #findMap(Collection, int)
+   */
+  public <T extends Model> Map<Long, T> findMap(Collection<Long> ids) throws Exception {
+    return findMap(ids, DEFAULT_IN_CHUNK_SIZE);
+  }
+
+  /**
+   * Find models by `id IN (...)` queries of at most chunkSize ids, with joins and the where clause if specified.
+   * Duplicated ids are queried once.
+   *
+   * @return found models by id, in the order of ids
+   */
+  public <T extends Model> Map<Long, T> findMap(Collection<Long> ids, int chunkSize) throws Exception {
+    if (chunkSize < 1) {
+      throw new IllegalArgumentException("chunkSize should be positive");
+    }
+    if (isLimited()) {
+      throw new IllegalStateException("find by ids cannot be used with limit or offset");
+    }
+
+    List<Long> distinct = new ArrayList<>(new LinkedHashSet<>(ids));
+    distinct.remove(null);
+
+    String idColumn = StringUtils.isBlank(reservedJoin) ? "id" : String.format("%s.id", tableName);
+    Map<Long, T> found = new HashMap<>(distinct.size() * 4 / 3 + 1);
+
+    for (int from = 0; from < distinct.size(); from += chunkSize) {
+      List<Long> chunk = distinct.subList(from, Math.min(from + chunkSize, distinct.size()));
+
+      List<T> models = copyQuery().where(String.format("%s IN (%s)", idColumn,
+              StringUtils.join(Collections.nCopies(chunk.size(), "?"), ',')), chunk.toArray()).fetch();
+      for (T m : models) {
+        // joined rows may repeat the same id
+        found.putIfAbsent(m.getId(), m);
+      }
+    }
+
+    Map<Long, T> result = new LinkedHashMap<>(found.size() * 4 / 3 + 1);
+    for (Long id : distinct) {
+      T m = found.get(id);
+      if (m != null) {
+        result.put(id, m);
+      }
+    }
+    return result;
   }
 
   public boolean exists() throws Exception {
@@ -265,13 +1164,19 @@ public class Model {
     String q = String.format("UPDATE %s SET %s WHERE %s", tableName,
             StringUtils.join(colnames.stream().map(c -> String.format("%s=?", c)).toArray(), ','),
             getReservedWhere());
+    evictCachedRows();
 
-    return execute(queryType, q, pst -> {
-      int last = addParameters(pst, 0, colvals);
-      addParameters(pst, last, reservedWhereParams);
+    try {
+      return execute(queryType, q, pst -> {
+        int last = bindColumnValues(pst, 0, colnames, colvals);
+        addParameters(pst, last, reservedWhereParams);
 
-      return ExecuteResult.of(true, (long) pst.executeUpdate());
-    });
+        long rows = pst.executeUpdate();
+        return ExecuteResult.of(true, rows).withRows(rows);
+      });
+    } finally {
+      evictCachedRows();
+    }
   }
 
   /**
@@ -287,13 +1192,19 @@ public class Model {
     String q = String.format("UPDATE %s SET %s WHERE %s", tableName,
             String.format("%s=?", columnName),
             getReservedWhere());
+    evictCachedRows();
 
-    return execute(queryType, q, pst -> {
-      int last = addParameters(pst, 0, Arrays.asList(value));
-      addParameters(pst, last, reservedWhereParams);
+    try {
+      return execute(queryType, q, pst -> {
+        int last = addParameters(pst, 0, Arrays.asList(value));
+        addParameters(pst, last, reservedWhereParams);
 
-      return ExecuteResult.of(true, (long) pst.executeUpdate());
-    });
+        long rows = pst.executeUpdate();
+        return ExecuteResult.of(true, rows).withRows(rows);
+      });
+    } finally {
+      evictCachedRows();
+    }
   }
 
   /**
@@ -305,12 +1216,95 @@ public class Model {
 
     String q = String.format("DELETE FROM %s WHERE %s", tableName,
             getReservedWhere());
+    evictCachedRows();
 
-    return execute(queryType, q, pst -> {
-      addParameters(pst, 0, reservedWhereParams);
+    try {
+      return execute(queryType, q, pst -> {
+        addParameters(pst, 0, reservedWhereParams);
 
-      return ExecuteResult.of(true, (long) pst.executeUpdate());
-    });
+        long rows = pst.executeUpdate();
+        return ExecuteResult.of(true, rows).withRows(rows);
+      });
+    } finally {
+      evictCachedRows();
+    }
+  }
+
+  /**
+   * @see #deleteByIds(Collection, int)
+   */
+  public long deleteByIds(Collection<Long> ids) throws Exception {
+    return deleteByIds(ids, DEFAULT_IN_CHUNK_SIZE);
+  }
+
+  /**
+   * Delete rows by `id IN (...)` statements of at most chunkSize ids, and the where clause if specified.
+   * Hooks are not invoked since there is no model for each row.
+   *
+   * @return affected row count
+   */
+  public long deleteByIds(Collection<Long> ids, int chunkSize) throws Exception {
+    return executeByIds(QueryType.DELETE, String.format("DELETE FROM %s", tableName),
+            Collections.emptyList(), ids, chunkSize);
+  }
+
+  /**
+   * @see #updateColumnByIds(Collection, String, Object, int)
+   */
+  public long updateColumnByIds(Collection<Long> ids, String columnName, Object value) throws Exception {
+    return updateColumnByIds(ids, columnName, value, DEFAULT_IN_CHUNK_SIZE);
+  }
+
+  /**
+   * Update single column of rows to the same value by `id IN (...)` statements of at most chunkSize ids,
+   * and the where clause if specified.
+   * Hooks are not invoked since there is no model for each row.
+   * Like updateColumn, updated_at is not set, unlike update().
+   *
+   * @return affected row count
+   */
+  public long updateColumnByIds(Collection<Long> ids, String columnName, Object value, int chunkSize) throws Exception {
+    return executeByIds(QueryType.UPDATE, String.format("UPDATE %s SET %s=?", tableName, columnName),
+            Collections.singletonList(value), ids, chunkSize);
+  }
+
+  private long executeByIds(QueryType queryType, String statement, List<Object> params,
+                            Collection<Long> ids, int chunkSize) throws Exception {
+    if (chunkSize < 1) {
+      throw new IllegalArgumentException("chunkSize should be positive");
+    }
+    // the statement is on this table only
+    if (!StringUtils.isBlank(reservedJoin)) {
+      throw new IllegalArgumentException("joins cannot be used with statements by ids");
+    }
+
+    List<Object> idList = new ArrayList<>(ids);
+    long rows = 0;
+
+    for (int from = 0; from < idList.size(); from += chunkSize) {
+      List<Object> chunk = idList.subList(from, Math.min(from + chunkSize, idList.size()));
+
+      String where = String.format("%s.id IN (%s)", tableName, StringUtils.join(Collections.nCopies(chunk.size(), "?"), ','));
+      if (!StringUtils.isBlank(reservedWhere)) {
+        where += String.format(" AND (%s)", reservedWhere);
+      }
+      evictCachedRows(tableName, chunk);
+
+      try {
+        rows += execute(queryType, false, String.format("%s WHERE %s", statement, where), pst -> {
+          int last = addParameters(pst, 0, params);
+          last = addParameters(pst, last, chunk);
+          addParameters(pst, last, reservedWhereParams);
+
+          long affected = pst.executeUpdate();
+          return ExecuteResult.of(true, affected).withRows(affected);
+        });
+      } finally {
+        evictCachedRows(tableName, chunk);
+      }
+    }
+
+    return rows;
   }
 
   public void setColumnValues(Map<String, Object> colvals) {
@@ -340,12 +1334,29 @@ public class Model {
     return (String) get(columnName);
   }
 
+  /**
+   * Any numeric column can be read. It does not box the value if compactStorage is used.
+   *
+   * @throws NullPointerException if the value is null
+   * @throws ClassCastException if the value is not a number, including boolean
+   * @throws ArithmeticException if the value does not fit in int
+   */
   public int getInt(String columnName) {
-    return (int) get(columnName);
+    return Math.toIntExact(data.getLong(columnName));
   }
 
+  /**
+   * @see #getInt(String)
+   */
   public long getLong(String columnName) {
-    return (long) get(columnName);
+    return data.getLong(columnName);
+  }
+
+  /**
+   * @see #getInt(String)
+   */
+  public double getDouble(String columnName) {
+    return data.getDouble(columnName);
   }
 
   public Long getId() {
@@ -412,7 +1423,7 @@ public class Model {
   }
 
   void _beforeExecute(QueryType queryType) throws Exception {
-    Logger.t("before execute: %s", queryType.name());
+    Logger.t("before execute: {}", queryType.name());
 
     if (enableBeforeExecute) {
       beforeExecute(queryType);
@@ -426,10 +1437,21 @@ public class Model {
   }
 
   void _afterExecute(QueryType queryType, boolean success) throws Exception {
-    Logger.t("after execute: %s %s", queryType.name(), success);
+    _afterExecute(queryType, success, false);
+  }
+
+  /**
+   * @param typedFieldsRead typed fields are already read by the mapper
+   */
+  private void _afterExecute(QueryType queryType, boolean success, boolean typedFieldsRead) throws Exception {
+    Logger.t("after execute: {} {}", queryType.name(), success);
 
     if (success) {
-      data.columnValuesToAnnotation(this);
+      if (typedFieldsRead) {
+        data.columnValuesToAnnotation(this, ModelMetadata.of(getClass()).getUntypedColumns());
+      } else {
+        data.columnValuesToAnnotation(this);
+      }
       data.saveColumnValues();
     }
 
@@ -439,72 +1461,130 @@ public class Model {
   }
 
   private <T> T newInstance() throws ConstructionException {
-    Constructor<? extends Model> declaredConstructor;
+    return ModelMetadata.of(getClass()).newInstance();
+  }
 
-    try {
-      declaredConstructor = getClass().getDeclaredConstructor();
-    } catch (NoSuchMethodException e) {
-      throw new ConstructionException("cannot find constructor for this class");
+  /**
+   * Bind column values of this model for insert/update.
+   * Typed fields are bound from the fields by the generated mapper if exists, others by values.
+   *
+   * @return last set column index
+   */
+  private int bindColumnValues(PreparedStatement pst, int lastColumnIndex, List<String> colnames, List<Object> vals) throws SQLException {
+    ModelMetadata meta = ModelMetadata.of(getClass());
+    ModelMapper<Model> mapper = meta.getMapper();
+    if (mapper == null) {
+      return addParameters(pst, lastColumnIndex, vals);
     }
 
-    try {
-      return (T) declaredConstructor.newInstance();
-    } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
-      throw new ConstructionException("cannot make new instance of this class");
+    if (!queryListeners.isEmpty()) {
+      captureParameters(vals);
     }
+
+    for (int i = 0; i < vals.size(); i++) {
+      String colname = colnames.get(i);
+      int colidx = lastColumnIndex + 1 + i;
+
+      int index = ModelData.isPredefinedColumn(colname) ? -1 : meta.typedColumnIndexOf(colname);
+      if (index >= 0) {
+        mapper.bind(this, index, pst, colidx);
+      } else {
+        addParameter(pst, i, colidx, vals.get(i));
+      }
+    }
+    return lastColumnIndex + vals.size();
   }
 
   /**
    * @return last set column index
    */
-  private int addParameters(PreparedStatement pst, int lastColumnIndex, List<Object> vals) throws SQLException {
-    int colidx = 0;
+  private static int addParameters(PreparedStatement pst, int lastColumnIndex, List<Object> vals) throws SQLException {
+    int colidx = lastColumnIndex;
+
+    if (!queryListeners.isEmpty()) {
+      captureParameters(vals);
+    }
 
     for (int i = 0; i < vals.size(); i++) {
-      Object val = vals.get(i);
       colidx = lastColumnIndex + 1 + i;
-
-      Logger.t("preparams - idx: %d colidx: %d val: %s", i, colidx, val);
-
-      // TODO need more
-      if (val instanceof Integer) {
-        pst.setInt(colidx, (Integer) val);
-      } else if (val instanceof Long) {
-        pst.setLong(colidx, (Long) val);
-      } else if (val instanceof Boolean) {
-        pst.setBoolean(colidx, (Boolean) val);
-      } else if (val instanceof String) {
-        pst.setString(colidx, (String) val);
-      } else if (val instanceof Timestamp) {
-        pst.setTimestamp(colidx, (Timestamp) val);
-      } else if (val instanceof java.sql.Date) {
-        pst.setDate(colidx, (java.sql.Date) val);
-      } else if (val instanceof LocalDate) {
-        pst.setDate(colidx, java.sql.Date.valueOf((LocalDate) val));
-      } else {
-        Logger.d("preparams - unrecognize type for val: %s", val);
-        pst.setObject(colidx, val);
-      }
+      addParameter(pst, i, colidx, vals.get(i));
     }
     return colidx;
   }
 
-  private void reserveDefaultWhereForUpdate() {
-    if (!StringUtils.isBlank(reservedWhere)) return;
-    reservedWhere = makeDefaultWhereForUpdate();
-    Logger.t("default where for update reserved: %s", reservedWhere);
+  private static void addParameter(PreparedStatement pst, int i, int colidx, Object val) throws SQLException {
+    if (Logger.isTraceEnabled()) {
+      Logger.t("preparams - idx: {} colidx: {} val: {}", i, colidx, val);
+    }
+
+    // TODO need more
+    if (val instanceof Integer) {
+      pst.setInt(colidx, (Integer) val);
+    } else if (val instanceof Long) {
+      pst.setLong(colidx, (Long) val);
+    } else if (val instanceof Boolean) {
+      pst.setBoolean(colidx, (Boolean) val);
+    } else if (val instanceof String) {
+      pst.setString(colidx, (String) val);
+    } else if (val instanceof Timestamp) {
+      pst.setTimestamp(colidx, (Timestamp) val);
+    } else if (val instanceof java.sql.Date) {
+      pst.setDate(colidx, (java.sql.Date) val);
+    } else if (val instanceof LocalDate) {
+      pst.setDate(colidx, java.sql.Date.valueOf((LocalDate) val));
+    } else {
+      Logger.d("preparams - unrecognize type for val: {}", val);
+      pst.setObject(colidx, val);
+    }
+  }
+
+  private static void captureParameters(List<Object> vals) {
+    List<Object> captured = capturedParameters.get();
+    if (captured == null) return;
+
+    for (Object val : vals) {
+      if (captured.size() >= MAX_CAPTURED_PARAMETERS) return;
+      captured.add(val);
+    }
+  }
+
+  /**
+   * start capturing parameters of a query
+   *
+   * @return previously capturing parameters of outer query to restore
+   */
+  private static List<Object> beginCapture() {
+    List<Object> outer = capturedParameters.get();
+    capturedParameters.set(new ArrayList<>());
+    return outer;
+  }
+
+  /**
+   * @return captured parameters
+   */
+  private static List<Object> endCapture(List<Object> outer) {
+    List<Object> captured = capturedParameters.get();
+    if (outer != null) {
+      capturedParameters.set(outer);
+    } else {
+      capturedParameters.remove();
+    }
+    return captured != null ? captured : Collections.emptyList();
   }
 
   // for update/delete if where clause is not specified
-  private String makeDefaultWhereForUpdate() {
+  private void reserveDefaultWhereForUpdate() {
+    if (!StringUtils.isBlank(reservedWhere)) return;
+
     Long id = data.getId();
-    return makeWhereWithFindId(id);
+    if (id == null) return;
+
+    where(makeWhereWithFindId(), id);
+    Logger.t("default where for update reserved: {} {}", reservedWhere, id);
   }
 
-  private String makeWhereWithFindId(long id) {
-    return StringUtils.isBlank(reservedJoin) ?
-            String.format("id=%d", id) :
-            String.format("%s.id=%d", tableName, id);
+  private String makeWhereWithFindId() {
+    return StringUtils.isBlank(reservedJoin) ? "id=?" : String.format("%s.id=?", tableName);
   }
 
   private String getReservedWhere() {
@@ -550,36 +1630,99 @@ public class Model {
       return result;
     }
 
+    private ExecuteResult<R> withRows(long rows) {
+      this.rows = rows;
+      return this;
+    }
+
     private boolean success;
     private R result;
+
+    /**
+     * fetched or affected rows for query metrics, -1 if unknown
+     */
+    private long rows = -1;
   }
 
   private <R> R execute(QueryType queryType, String sql, StatementExecutor<R> exec) throws Exception {
+    return execute(queryType, queryType != QueryType.SELECT, sql, exec);
+  }
+
+  /**
+   * @param afterExecute call afterExecute hook of this model
+   */
+  private <R> R execute(QueryType queryType, boolean afterExecute, String sql, StatementExecutor<R> exec) throws Exception {
     ExecuteResult<R> result = new ExecuteResult<>();
     Connector c = null;
     boolean success = false;
+    Exception error = null;
+
+    boolean measure = !queryListeners.isEmpty();
+    long startedAt = measure ? System.nanoTime() : 0;
+    long preparedAt = 0;
+    executedAtNanos = 0;
+    List<Object> outerParameters = measure ? beginCapture() : null;
 
     try {
       c = Connector.prepareStatement(sql, true);
       PreparedStatement pst = c.getPreparedStatement();
+      if (measure) preparedAt = System.nanoTime();
 
       result = exec.execute(pst);
 
       success = true;
-    } catch (SQLException e) {
-      Logger.e("fail to execute - %s", Logger.getExceptionString(e));
+    } catch (Exception e) {
+      if (e instanceof SQLException) {
+        Logger.e("fail to execute", e);
+      }
+      error = e;
       throw e;
     } finally {
       if (c != null) {
         c.executed(success);
       }
-      if (queryType != null && queryType != QueryType.SELECT) {
+      if (measure) {
+        fireQueryEvent(queryType, tableName, sql, endCapture(outerParameters),
+                startedAt, preparedAt, executedAtNanos, result.rows, error);
+      }
+      if (afterExecute) {
         _afterExecute(queryType, result.isSucceed());
       }
     }
     return result.getResult();
   }
 
+  /**
+   * mark the statement is executed and mapping starts, to measure mapping time separately
+   */
+  private void markExecuted() {
+    if (!queryListeners.isEmpty()) {
+      executedAtNanos = System.nanoTime();
+    }
+  }
+
+  /**
+   * @param preparedAt 0 if failed to prepare
+   * @param executedAt 0 if mapping is not measured separately
+   */
+  static void fireQueryEvent(QueryType queryType, String tableName, String sql, List<Object> parameters,
+                                     long startedAt, long preparedAt, long executedAt, long rows, Exception error) {
+    long endedAt = System.nanoTime();
+    if (preparedAt == 0) preparedAt = endedAt;
+    if (executedAt == 0) executedAt = endedAt;
+
+    QueryEvent event = new QueryEvent(queryType, tableName, sql, parameters,
+            preparedAt - startedAt, executedAt - preparedAt, endedAt - executedAt, rows, error);
+
+    for (QueryListener listener : queryListeners) {
+      try {
+        listener.onQuery(event);
+      } catch (Exception e) {
+        Logger.w("query listener failed", e);
+      }
+    }
+  }
+
   @FunctionalInterface
   public interface ManualExecuteFunction<R> {
     R call(PreparedStatement pst) throws Exception;
@@ -596,21 +1739,35 @@ public class Model {
     R result = null;
     Connector c = null;
     boolean success = false;
+    Exception error = null;
+
+    boolean measure = !queryListeners.isEmpty();
+    long startedAt = measure ? System.nanoTime() : 0;
+    long preparedAt = 0;
+    List<Object> outerParameters = measure ? beginCapture() : null;
 
     try {
       c = Connector.prepareStatement(sql, true);
       PreparedStatement pst = c.getPreparedStatement();
+      if (measure) preparedAt = System.nanoTime();
 
       result = exec.call(pst);
 
       success = true;
-    } catch (SQLException e) {
-      Logger.e("fail to execute - %s", Logger.getExceptionString(e));
+    } catch (Exception e) {
+      if (e instanceof SQLException) {
+        Logger.e("fail to execute", e);
+      }
+      error = e;
       throw e;
     } finally {
       if (c != null) {
         c.executed(success);
       }
+      if (measure) {
+        // parameters set by exec directly are not captured
+        fireQueryEvent(null, null, sql, endCapture(outerParameters), startedAt, preparedAt, 0, -1, error);
+      }
     }
     return result;
   }
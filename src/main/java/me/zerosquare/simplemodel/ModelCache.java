@@ -0,0 +1,234 @@
+package me.zerosquare.simplemodel;
+
+import me.zerosquare.simplemodel.annotations.Cached;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Second-level cache of rows found by id, for tables of model classes annotated with Cached.
+ * Column values of rows are kept, and a new model is made for each find, so cached models can be modified safely.
+ * Rows are evicted in least recently used order or by TTL, and invalidated when models of the table are updated
+ * or deleted in this process. Changes by other processes or raw SQL statements are seen after TTL.
+ * It is not used in transactions, and tables written in a transaction are invalidated again when the transaction ends.
+ */
+public class ModelCache {
+
+  public static class Stats {
+    private final int size;
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final long expirations;
+    private final long invalidations;
+
+    private Stats(int size, long hits, long misses, long evictions, long expirations, long invalidations) {
+      this.size = size;
+      this.hits = hits;
+      this.misses = misses;
+      this.evictions = evictions;
+      this.expirations = expirations;
+      this.invalidations = invalidations;
+    }
+
+    /**
+     * @return number of cached rows
+     */
+    public int getSize() {
+      return size;
+    }
+
+    public long getHitCount() {
+      return hits;
+    }
+
+    public long getMissCount() {
+      return misses;
+    }
+
+    /**
+     * @return hits / (hits + misses), 0 if no request
+     */
+    public double getHitRate() {
+      long requests = hits + misses;
+      return requests > 0 ? (double) hits / requests : 0;
+    }
+
+    /**
+     * @return number of rows evicted by maxSize
+     */
+    public long getEvictionCount() {
+      return evictions;
+    }
+
+    /**
+     * @return number of rows expired by TTL
+     */
+    public long getExpirationCount() {
+      return expirations;
+    }
+
+    /**
+     * @return number of rows invalidated by update or delete
+     */
+    public long getInvalidationCount() {
+      return invalidations;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("size: %d hits: %d misses: %d evictions: %d expirations: %d invalidations: %d",
+              size, hits, misses, evictions, expirations, invalidations);
+    }
+  }
+
+  private static class Entry {
+    private final Map<String, Object> columnValues;
+    private final long expiresAt;
+
+    private Entry(Map<String, Object> columnValues, long expiresAt) {
+      this.columnValues = columnValues;
+      this.expiresAt = expiresAt;
+    }
+  }
+
+  /**
+   * by table name
+   */
+  private static final ConcurrentHashMap<String, ModelCache> caches = new ConcurrentHashMap<>();
+
+  private final String tableName;
+  private final int maxSize;
+  private final long ttlNanos;
+
+  /**
+   * rows by id in LRU order
+   */
+  private final LinkedHashMap<Long, Entry> entries;
+
+  /**
+   * System.nanoTime by default, replaced to test TTL without waiting
+   */
+  private LongSupplier nanoTime = System::nanoTime;
+
+  /**
+   * increased by every invalidation, so rows read before an invalidation are not put after it
+   */
+  private long version;
+
+  private long hits;
+  private long misses;
+  private long evictions;
+  private long expirations;
+  private long invalidations;
+
+  private ModelCache(String tableName, int maxSize, long ttlSeconds) {
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException(String.format("invalid max size of cache: %d", maxSize));
+    }
+
+    this.tableName = tableName;
+    this.maxSize = maxSize;
+    this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+    this.entries = new LinkedHashMap<Long, Entry>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+        if (size() <= ModelCache.this.maxSize) return false;
+        evictions++;
+        return true;
+      }
+    };
+  }
+
+  /**
+   * The first config wins if classes of the same table have different configs
+   */
+  static ModelCache register(String tableName, Cached cached) {
+    return caches.computeIfAbsent(tableName, k -> new ModelCache(tableName, cached.maxSize(), cached.ttlSeconds()));
+  }
+
+  /**
+   * @return null if the table is not cached
+   */
+  static ModelCache forTable(String tableName) {
+    return caches.get(tableName);
+  }
+
+  /**
+   * @return null if the class is not annotated with Cached
+   */
+  public static ModelCache of(Class<? extends Model> clazz) {
+    return ModelMetadata.of(clazz).getCache();
+  }
+
+  static void invalidateTables(Collection<String> tableNames) {
+    for (String tableName : tableNames) {
+      ModelCache cache = forTable(tableName);
+      if (cache != null) {
+        cache.invalidateAll();
+      }
+    }
+  }
+
+  public String getTableName() {
+    return tableName;
+  }
+
+  synchronized void setNanoTime(LongSupplier nanoTime) {
+    this.nanoTime = nanoTime;
+  }
+
+  synchronized long version() {
+    return version;
+  }
+
+  /**
+   * @return column values of the row, null if not cached. Do not modify it.
+   */
+  synchronized Map<String, Object> get(long id) {
+    Entry entry = entries.get(id);
+    if (entry != null && ttlNanos > 0 && nanoTime.getAsLong() - entry.expiresAt >= 0) {
+      entries.remove(id);
+      expirations++;
+      entry = null;
+    }
+
+    if (entry == null) {
+      misses++;
+      return null;
+    }
+    hits++;
+    return entry.columnValues;
+  }
+
+  /**
+   * @param version version before the row is read. The row is not put if invalidated after that
+   */
+  synchronized void put(long id, Map<String, Object> columnValues, long version) {
+    if (version != this.version) return;
+    entries.put(id, new Entry(new HashMap<>(columnValues), nanoTime.getAsLong() + ttlNanos));
+  }
+
+  synchronized void invalidate(long id) {
+    version++;
+    if (entries.remove(id) != null) {
+      invalidations++;
+    }
+  }
+
+  public synchronized void invalidateAll() {
+    version++;
+    invalidations += entries.size();
+    entries.clear();
+  }
+
+  public synchronized Stats getStats() {
+    return new Stats(entries.size(), hits, misses, evictions, expirations, invalidations);
+  }
+
+}
@@ -0,0 +1,145 @@
+package me.zerosquare.simplemodel;
+
+import me.zerosquare.simplemodel.exceptions.CursorException;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Iterates fetched models one by one without loading all rows into memory.
+ * It holds the connection and the ResultSet until it is closed or iterated to the end, so always close it.
+ *
+ * @param <T> model class
+ */
+public class ModelCursor<T extends Model> implements Iterator<T>, AutoCloseable {
+
+  private final Model query;
+  private final Connector connector;
+  private final ResultSet rs;
+  private final ColumnLayout layout;
+
+  private boolean fetched;
+  private boolean hasNext;
+  private boolean closed;
+  private boolean success = true;
+
+  /**
+   * for query listeners - null if not measured
+   */
+  private String sql;
+  private String tableName;
+  private List<Object> parameters;
+  private long startedAt;
+  private long preparedAt;
+  private long executedAt;
+  private long rows;
+  private Exception error;
+
+  ModelCursor(Model query, Connector connector, ResultSet rs, ColumnLayout layout) {
+    this.query = query;
+    this.connector = connector;
+    this.rs = rs;
+    this.layout = layout;
+  }
+
+  /**
+   * fire a query event on close. execute time is until the first row is fetched, and mapping time is until closed
+   */
+  void measure(String tableName, String sql, List<Object> parameters, long startedAt, long preparedAt) {
+    this.tableName = tableName;
+    this.sql = sql;
+    this.parameters = parameters;
+    this.startedAt = startedAt;
+    this.preparedAt = preparedAt;
+  }
+
+  /**
+   * @throws CursorException if fail to read next row
+   */
+  @Override
+  public boolean hasNext() {
+    if (closed) return false;
+    if (fetched) return hasNext;
+
+    try {
+      hasNext = rs.next();
+      fetched = true;
+      if (sql != null && executedAt == 0) {
+        executedAt = System.nanoTime();
+      }
+    } catch (SQLException e) {
+      fail(e);
+    }
+
+    if (!hasNext) {
+      close();
+    }
+    return hasNext;
+  }
+
+  /**
+   * @throws CursorException if fail to read or map the row
+   */
+  @Override
+  public T next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    fetched = false;
+
+    try {
+      T model = query.mapRow(rs, layout);
+      rows++;
+      return model;
+    } catch (Exception e) {
+      fail(e);
+      return null;
+    }
+  }
+
+  /**
+   * Stream of remaining models. Closing the stream closes this cursor.
+   */
+  public Stream<T> stream() {
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+            .onClose(this::close);
+  }
+
+  public boolean isClosed() {
+    return closed;
+  }
+
+  /**
+   * Release the ResultSet and the connection. It can be called multiple times.
+   */
+  @Override
+  public void close() {
+    if (closed) return;
+    closed = true;
+
+    Connector.tryClose(rs);
+
+    query.restoreFetchSize(connector.getPreparedStatement());
+
+    connector.executed(success);
+
+    if (sql != null) {
+      Model.fireQueryEvent(Model.QueryType.SELECT, tableName, sql, parameters, startedAt, preparedAt, executedAt, rows, error);
+    }
+  }
+
+  private void fail(Exception e) {
+    success = false;
+    error = e;
+    close();
+    throw new CursorException(e);
+  }
+
+}
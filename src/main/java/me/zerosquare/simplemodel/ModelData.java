@@ -1,13 +1,10 @@
 package me.zerosquare.simplemodel;
 
 import me.zerosquare.simplemodel.Model.QueryType;
-import me.zerosquare.simplemodel.annotations.Column;
 import me.zerosquare.simplemodel.internals.Logger;
-import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.MutablePair;
 import org.apache.commons.lang3.tuple.Pair;
 
-import java.lang.reflect.Field;
 import java.sql.*;
 import java.util.*;
 
@@ -40,7 +37,11 @@ class ModelData {
    * save column values at this moment so track the modified columns for update modified only
    */
   void saveColumnValues() {
-    oldColumnValues = new HashMap<>(columnValues);
+    if (columnValues instanceof SlotMap) {
+      oldColumnValues = ((SlotMap) columnValues).snapshot();
+    } else {
+      oldColumnValues = new HashMap<>(columnValues);
+    }
   }
 
   Map<String, Object> getColumnValues() {
@@ -55,6 +56,23 @@ class ModelData {
     return columnValues.get(key);
   }
 
+  /**
+   * numeric value without boxing when the values are compact storage
+   */
+  long getLong(String key) {
+    if (columnValues instanceof SlotMap) {
+      return ((SlotMap) columnValues).getLong(key);
+    }
+    return ((Number) get(key)).longValue();
+  }
+
+  double getDouble(String key) {
+    if (columnValues instanceof SlotMap) {
+      return ((SlotMap) columnValues).getDouble(key);
+    }
+    return ((Number) get(key)).doubleValue();
+  }
+
   Object get(String columnName, Object fallback) {
     Object v = get(columnName);
     return v != null ? v : fallback;
@@ -115,6 +133,11 @@ class ModelData {
   }
 
   Map<String, Object> getModifiedColumnValues() {
+    if (columnValues instanceof SlotMap && oldColumnValues instanceof SlotMap &&
+            ((SlotMap) columnValues).getSchema() == ((SlotMap) oldColumnValues).getSchema()) {
+      return ((SlotMap) columnValues).modifiedSince((SlotMap) oldColumnValues);
+    }
+
     Map<String, Object> modified = new HashMap<>();
 
     for (Map.Entry<String, Object> kv : columnValues.entrySet()) {
@@ -137,165 +160,64 @@ class ModelData {
    * @throws SQLException
    */
   Map<String, Object> getColumnValuesFromResultSet(String tableName, ResultSet rs) throws SQLException {
-    Map<String, Object> colvals = new HashMap<>();
-
-    ResultSetMetaData meta = rs.getMetaData();
-    int cols = meta.getColumnCount();
-
-    for (int col = 1; col <= cols; col++) {
-      // transform into lower case because h2 db returns CAPITALIZED table/column names!
-      String table = meta.getTableName(col).toLowerCase();
-      String key = meta.getColumnName(col).toLowerCase();
-      String label = meta.getColumnLabel(col).toLowerCase();
-      int type = meta.getColumnType(col);
-      Object val;
-
-      // TODO need more
-      switch (type) {
-        case Types.BIT:
-        case Types.TINYINT:
-        case Types.BOOLEAN:
-          val = rs.getBoolean(col);
-          break;
-
-        case Types.SMALLINT:
-        case Types.INTEGER:
-          val = rs.getInt(col);
-          break;
-
-        case Types.BIGINT:
-          val = rs.getLong(col);
-          break;
-
-        case Types.VARCHAR:
-        case Types.LONGVARCHAR:
-          val = rs.getString(col);
-          break;
-
-        case Types.TIMESTAMP:
-          val = rs.getTimestamp(col);
-          break;
-
-        default:
-          Logger.d(String.format("Unknown column type! %s(%d) %s on column %s",
-                  meta.getColumnTypeName(col), type, meta.getColumnClassName(col), key));
-
-          val = rs.getObject(col);
-      }
-
-      Logger.t("fetched - table: %s key: %s label: %s type: %s val: %s",
-              table, key, label, type, val == null ? "(null)" : val.toString());
-
-      String storeKey = key;
-      if (!table.equals(tableName) && table.length() > 0) {
-        storeKey = String.format("%s.%s", table, key);
-      }
-
-      if (!colvals.containsKey(storeKey)) {
-        colvals.put(storeKey, val);
-      } else {
-        Logger.w("key duplicated! overwrite skipped! - table: %s storekey: %s val: %s",
-                table, storeKey, val == null ? "(null)" : val.toString());
-      }
-
-      if (!label.equals(key)) {
-        colvals.put(label, val);
-      }
-    }
-
-    return colvals;
+    return ColumnLayout.of(null, tableName, rs).read(rs);
   }
 
   /**
    * to skip invalid columns when insert/update
    */
   private boolean isValidKeyValue(String key, Object val) {
-    if (key.equals(COLUMN_NAME_ID) ||
-            key.equals(COLUMN_NAME_CREATED_AT) ||
-            key.equals(COLUMN_NAME_UPDATED_AT)) {
+    if (isPredefinedColumn(key)) {
       return false;
     }
 
     return val != null;
   }
 
+  /**
+   * values of predefined columns for insert/update are not from the fields, see buildColumnNameAndValues
+   */
+  static boolean isPredefinedColumn(String key) {
+    return key.equals(COLUMN_NAME_ID) ||
+            key.equals(COLUMN_NAME_CREATED_AT) ||
+            key.equals(COLUMN_NAME_UPDATED_AT);
+  }
+
   void columnValuesFromAnnotation(Object o) {
-    for (Class c = o.getClass(); c != null && c != Object.class; c = c.getSuperclass()) {
-      Field[] fields = c.getDeclaredFields();
-      for (Field field : fields) {
-        if (field.isAnnotationPresent(Column.class)) {
-          validateAnnotatedField(field);
-
-          Column bc = field.getAnnotation(Column.class);
-          String name = columnFieldName(bc, field);
-
-          try {
-            Object val = field.get(o);
-            Logger.t("from annotation - %s : %s", name, val);
-            put(name, val);
-          } catch (IllegalAccessException e) {
-            // ignore me
-            Logger.w(Logger.getExceptionString(e));
-          }
-        }
+    for (ModelMetadata.ColumnField column : ModelMetadata.of(o.getClass()).getColumns()) {
+      String name = column.getName();
+
+      try {
+        Object val = column.get(o);
+        Logger.t("from annotation - {} : {}", name, val);
+        put(name, val);
+      } catch (IllegalAccessException e) {
+        // ignore me
+        Logger.w("fail to access field", e);
       }
     }
   }
 
   void columnValuesToAnnotation(Object o) {
-    for (Class c = o.getClass(); c != null && c != Object.class; c = c.getSuperclass()) {
-      Field[] fields = c.getDeclaredFields();
-      for (Field field : fields) {
-        if (field.isAnnotationPresent(Column.class)) {
-          validateAnnotatedField(field);
-
-          Column bc = field.getAnnotation(Column.class);
-          String name = columnFieldName(bc, field);
-
-          try {
-            Object val = get(name);
-            Logger.t("to annotation - %s : %s", name, val);
-
-            setFieldValue(o, field, val);
-          } catch (IllegalArgumentException e) {
-            // ignore me
-            Logger.w(Logger.getExceptionString(e));
-          }
-        }
-      }
-    }
+    columnValuesToAnnotation(o, ModelMetadata.of(o.getClass()).getColumns());
   }
 
-  private String columnFieldName(Column col, Field field) {
-    String name = col.name();
-    if (StringUtils.isBlank(name)) name = field.getName();
-    return name.toLowerCase();
-  }
+  void columnValuesToAnnotation(Object o, List<ModelMetadata.ColumnField> columns) {
+    for (ModelMetadata.ColumnField column : columns) {
+      String name = column.getName();
 
-  /**
-   * let Integer be put in Long
-   *
-   * @param o
-   * @param field
-   * @param val
-   */
-  private void setFieldValue(Object o, Field field, Object val) {
-    try {
-      // TODO need more
-      if (val != null && field.getType() == Long.class && val instanceof Integer) {
-        field.set(o, Long.valueOf((Integer) val));
-      } else {
-        field.set(o, val);
-      }
-    } catch (IllegalAccessException e) {
-      // ignore me
-      Logger.w("fail to setFieldValue - %s", Logger.getExceptionString(e));
-    }
-  }
+      try {
+        Object val = get(name);
+        Logger.t("to annotation - {} : {}", name, val);
 
-  private void validateAnnotatedField(Field field) {
-    if (field.getType().isPrimitive()) {
-      throw new RuntimeException(String.format("field '%s %s' should not be primitive!", field.getType().getName(), field.getName()));
+        column.set(o, val);
+      } catch (IllegalArgumentException e) {
+        // ignore me
+        Logger.w("fail to access field", e);
+      } catch (IllegalAccessException e) {
+        // ignore me
+        Logger.w("fail to setFieldValue", e);
+      }
     }
   }
 
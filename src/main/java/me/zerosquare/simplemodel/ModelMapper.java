@@ -0,0 +1,53 @@
+package me.zerosquare.simplemodel;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Reflection-free accessor of a model class, generated at compile time by ModelMapperProcessor.
+ * If a generated mapper exists for a model class, it is used instead of reflection to create instances and map columns.
+ * Fields are read from ResultSet and bound to PreparedStatement by typed methods (e.g. getLong/setLong) of their types.
+ *
+ * @param <T> model class
+ */
+public interface ModelMapper<T extends Model> {
+
+  /**
+   * Suffix of generated mapper class name.
+   * Mapper of `a.b.Outer$Inner` is `a.b.Outer_Inner_ModelMapper`.
+   */
+  String CLASS_NAME_SUFFIX = "_ModelMapper";
+
+  T newInstance();
+
+  /**
+   * @return column names in index order
+   */
+  String[] columnNames();
+
+  Object get(T model, int columnIndex);
+
+  /**
+   * @throws ClassCastException if type of the value does not match to the field
+   */
+  void set(T model, int columnIndex, Object value);
+
+  /**
+   * @return false if there is no typed method for the field type. Such fields are not read and bound by this mapper
+   */
+  boolean isTyped(int columnIndex);
+
+  /**
+   * Read typed fields from current row of the ResultSet. SQL NULL and columns not selected are read as null.
+   *
+   * @param columns column of the ResultSet (starting from 1) for each column index, 0 if not selected
+   */
+  void read(T model, ResultSet rs, int[] columns) throws SQLException;
+
+  /**
+   * Bind a typed field to a parameter of the PreparedStatement
+   */
+  void bind(T model, int columnIndex, PreparedStatement pst, int parameterIndex) throws SQLException;
+
+}
@@ -0,0 +1,386 @@
+package me.zerosquare.simplemodel;
+
+import me.zerosquare.simplemodel.annotations.BelongsTo;
+import me.zerosquare.simplemodel.annotations.Cached;
+import me.zerosquare.simplemodel.annotations.Column;
+import me.zerosquare.simplemodel.annotations.HasMany;
+import me.zerosquare.simplemodel.annotations.Table;
+import me.zerosquare.simplemodel.exceptions.ConstructionException;
+import me.zerosquare.simplemodel.internals.Logger;
+import org.apache.commons.lang3.StringUtils;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ORM metadata of a model class (table name, columns, associations and constructor).
+ * It is computed once per class by reflection and reused for every query.
+ */
+class ModelMetadata {
+
+  private static final ConcurrentHashMap<Class<?>, ModelMetadata> registry = new ConcurrentHashMap<>();
+
+  static ModelMetadata of(Class<?> clazz) {
+    ModelMetadata meta = registry.get(clazz);
+    if (meta == null) {
+      meta = registry.computeIfAbsent(clazz, ModelMetadata::new);
+    }
+    return meta;
+  }
+
+  /**
+   * Field annotated with Column.
+   * Field is accessed by generated ModelMapper if exists, otherwise by reflection.
+   */
+  static class ColumnField {
+    private final String name;
+    private final Field field;
+    private final boolean isLong;
+
+    private ModelMapper<Model> mapper;
+    private int mapperIndex;
+
+    private ColumnField(String name, Field field) {
+      this.name = name;
+      this.field = field;
+      this.isLong = field.getType() == Long.class;
+    }
+
+    String getName() {
+      return name;
+    }
+
+    Field getField() {
+      return field;
+    }
+
+    Object get(Object o) throws IllegalAccessException {
+      if (mapper != null) {
+        return mapper.get((Model) o, mapperIndex);
+      }
+      return field.get(o);
+    }
+
+    /**
+     * let Integer be put in Long
+     */
+    void set(Object o, Object val) throws IllegalAccessException {
+      // TODO need more
+      if (isLong && val instanceof Integer) {
+        val = Long.valueOf((Integer) val);
+      }
+
+      if (mapper == null) {
+        field.set(o, val);
+        return;
+      }
+
+      try {
+        mapper.set((Model) o, mapperIndex, val);
+      } catch (ClassCastException e) {
+        // keep same exception with Field.set for wrong type
+        throw new IllegalArgumentException(e);
+      }
+    }
+  }
+
+  /**
+   * Field annotated with BelongsTo or HasMany
+   */
+  static class AssociationField {
+    private final String name;
+    private final Field field;
+    private final boolean hasMany;
+    private final Class<?> modelClass;
+    private final String foreignKey;
+
+    private AssociationField(Field field, boolean hasMany, Class<?> modelClass, String foreignKey) {
+      this.name = field.getName();
+      this.field = field;
+      this.hasMany = hasMany;
+      this.modelClass = modelClass;
+      this.foreignKey = foreignKey.toLowerCase();
+    }
+
+    String getName() {
+      return name;
+    }
+
+    boolean isHasMany() {
+      return hasMany;
+    }
+
+    /**
+     * associated model class, or element class of the list for HasMany
+     */
+    Class<?> getModelClass() {
+      return modelClass;
+    }
+
+    /**
+     * column of this model for BelongsTo, column of the associated model for HasMany
+     */
+    String getForeignKey() {
+      return foreignKey;
+    }
+
+    void set(Object o, Object val) throws IllegalAccessException {
+      field.set(o, val);
+    }
+  }
+
+  private final Class<?> clazz;
+
+  /**
+   * null if there is no Table annotation
+   */
+  private final String tableName;
+
+  /**
+   * columns of the class first, then columns of super classes
+   */
+  private final List<ColumnField> columns;
+
+  /**
+   * by field name
+   */
+  private final Map<String, AssociationField> associations;
+
+  /**
+   * null if there is no Cached annotation
+   */
+  private final ModelCache cache;
+
+  private volatile Constructor<?> constructor;
+
+  /**
+   * null if there is no generated mapper
+   */
+  private final ModelMapper<Model> mapper;
+
+  /**
+   * mapper index by column name, for columns read and bound by typed methods of the mapper
+   */
+  private final Map<String, Integer> typedColumnIndexes = new HashMap<>();
+
+  /**
+   * columns mapped by value, all columns if there is no generated mapper
+   */
+  private final List<ColumnField> untypedColumns = new ArrayList<>();
+
+  private ModelMetadata(Class<?> clazz) {
+    this.clazz = clazz;
+    this.tableName = findTableName(clazz);
+    this.columns = Collections.unmodifiableList(findColumns(clazz));
+    this.mapper = attachMapper(clazz, columns);
+    for (ColumnField column : columns) {
+      if (mapper != null && mapper.isTyped(column.mapperIndex)) {
+        typedColumnIndexes.put(column.getName(), column.mapperIndex);
+      } else {
+        untypedColumns.add(column);
+      }
+    }
+    this.associations = Collections.unmodifiableMap(findAssociations(clazz));
+    this.cache = findCache(clazz, tableName);
+
+    Logger.d("metadata loaded - class: {} table: {} columns: {} mapper: {}", clazz.getName(), tableName, columns.size(), mapper != null);
+  }
+
+  ModelMapper<Model> getMapper() {
+    return mapper;
+  }
+
+  /**
+   * @return index of the column in the mapper, -1 if it is not typed or there is no mapper
+   */
+  int typedColumnIndexOf(String column) {
+    Integer index = typedColumnIndexes.get(column);
+    return index != null ? index : -1;
+  }
+
+  List<ColumnField> getUntypedColumns() {
+    return untypedColumns;
+  }
+
+  String getTableName() {
+    return tableName;
+  }
+
+  List<ColumnField> getColumns() {
+    return columns;
+  }
+
+  ModelCache getCache() {
+    return cache;
+  }
+
+  /**
+   * @return null if no such association
+   */
+  AssociationField getAssociation(String name) {
+    return associations.get(name);
+  }
+
+  <T> T newInstance() throws ConstructionException {
+    if (mapper != null) {
+      return (T) mapper.newInstance();
+    }
+
+    Constructor<?> c = constructor;
+
+    if (c == null) {
+      try {
+        c = clazz.getDeclaredConstructor();
+      } catch (NoSuchMethodException e) {
+        throw new ConstructionException("cannot find constructor for this class");
+      }
+      constructor = c;
+    }
+
+    try {
+      return (T) c.newInstance();
+    } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+      throw new ConstructionException("cannot make new instance of this class");
+    }
+  }
+
+  static String mapperClassName(Class<?> clazz) {
+    return clazz.getName().replace('$', '_') + ModelMapper.CLASS_NAME_SUFFIX;
+  }
+
+  /**
+   * Find generated mapper by its name (without classpath scanning) and bind columns to the mapper
+   */
+  private static ModelMapper<Model> attachMapper(Class<?> clazz, List<ColumnField> columns) {
+    if (!Model.class.isAssignableFrom(clazz)) return null;
+
+    ModelMapper<Model> mapper;
+    try {
+      Class<?> mapperClass = Class.forName(mapperClassName(clazz), true, clazz.getClassLoader());
+      mapper = (ModelMapper<Model>) mapperClass.getDeclaredConstructor().newInstance();
+    } catch (ClassNotFoundException e) {
+      return null;
+    } catch (ReflectiveOperationException | ClassCastException e) {
+      Logger.w("cannot load mapper of {} - {}", clazz.getName(), e.toString());
+      return null;
+    }
+
+    String[] names = mapper.columnNames();
+    int[] indexes = new int[columns.size()];
+    for (int i = 0; i < columns.size(); i++) {
+      indexes[i] = Arrays.asList(names).indexOf(columns.get(i).getName());
+      if (indexes[i] < 0) {
+        Logger.w("mapper of {} is outdated, column '{}' not found. recompile the class", clazz.getName(), columns.get(i).getName());
+        return null;
+      }
+    }
+
+    for (int i = 0; i < columns.size(); i++) {
+      columns.get(i).mapper = mapper;
+      columns.get(i).mapperIndex = indexes[i];
+    }
+    return mapper;
+  }
+
+  private static String findTableName(Class<?> clazz) {
+    for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+      Table table = c.getAnnotation(Table.class);
+      if (table != null) {
+        return table.name().toLowerCase();
+      }
+    }
+    return null;
+  }
+
+  private static ModelCache findCache(Class<?> clazz, String tableName) {
+    if (tableName == null) return null;
+
+    for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+      Cached cached = c.getAnnotation(Cached.class);
+      if (cached != null) {
+        return ModelCache.register(tableName, cached);
+      }
+    }
+    return null;
+  }
+
+  private static List<ColumnField> findColumns(Class<?> clazz) {
+    List<ColumnField> columns = new ArrayList<>();
+
+    for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+      for (Field field : c.getDeclaredFields()) {
+        Column column = field.getAnnotation(Column.class);
+        if (column == null) continue;
+
+        validateAnnotatedField(field);
+
+        columns.add(new ColumnField(columnFieldName(column, field), field));
+      }
+    }
+
+    return columns;
+  }
+
+  private static Map<String, AssociationField> findAssociations(Class<?> clazz) {
+    Map<String, AssociationField> associations = new HashMap<>();
+
+    for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+      for (Field field : c.getDeclaredFields()) {
+        BelongsTo belongsTo = field.getAnnotation(BelongsTo.class);
+        HasMany hasMany = field.getAnnotation(HasMany.class);
+
+        AssociationField association;
+        if (belongsTo != null) {
+          String foreignKey = belongsTo.foreignKey();
+          if (StringUtils.isBlank(foreignKey)) foreignKey = field.getName() + "_id";
+          association = new AssociationField(field, false, field.getType(), foreignKey);
+        } else if (hasMany != null) {
+          association = new AssociationField(field, true, listElementType(field), hasMany.foreignKey());
+        } else {
+          continue;
+        }
+
+        if (!Model.class.isAssignableFrom(association.getModelClass())) {
+          throw new RuntimeException(String.format("association '%s' should be a model!", field.getName()));
+        }
+        associations.putIfAbsent(association.getName(), association);
+      }
+    }
+
+    return associations;
+  }
+
+  private static Class<?> listElementType(Field field) {
+    Type type = field.getGenericType();
+    if (field.getType() == List.class && type instanceof ParameterizedType) {
+      Type arg = ((ParameterizedType) type).getActualTypeArguments()[0];
+      if (arg instanceof Class) {
+        return (Class<?>) arg;
+      }
+    }
+    throw new RuntimeException(String.format("field '%s' should be List of models!", field.getName()));
+  }
+
+  private static String columnFieldName(Column col, Field field) {
+    String name = col.name();
+    if (StringUtils.isBlank(name)) name = field.getName();
+    return name.toLowerCase();
+  }
+
+  private static void validateAnnotatedField(Field field) {
+    if (field.getType().isPrimitive()) {
+      throw new RuntimeException(String.format("field '%s %s' should not be primitive!", field.getType().getName(), field.getName()));
+    }
+  }
+
+}
@@ -0,0 +1,48 @@
+package me.zerosquare.simplemodel;
+
+import java.util.List;
+
+/**
+ * A page of keyset pagination
+ *
+ * @param <T> model class
+ */
+public class Page<T extends Model> {
+
+  private final List<T> items;
+  private final boolean hasNext;
+  private final List<Object> lastValues;
+  private final String nextToken;
+
+  Page(List<T> items, boolean hasNext, List<Object> lastValues, String nextToken) {
+    this.items = items;
+    this.hasNext = hasNext;
+    this.lastValues = lastValues;
+    this.nextToken = nextToken;
+  }
+
+  public List<T> getItems() {
+    return items;
+  }
+
+  public boolean hasNext() {
+    return hasNext;
+  }
+
+  /**
+   * @return key values of the last item, empty if no item
+   */
+  public List<Object> getLastValues() {
+    return lastValues;
+  }
+
+  /**
+   * Pass this to Model.page(keyset, token, size) for the next page
+   *
+   * @return null if no next page
+   */
+  public String getNextToken() {
+    return nextToken;
+  }
+
+}
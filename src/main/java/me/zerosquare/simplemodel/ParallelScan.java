@@ -0,0 +1,209 @@
+package me.zerosquare.simplemodel;
+
+import me.zerosquare.simplemodel.Model.ModelConsumer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Scan a table in parallel by splitting the id space into ranges between min and max id.
+ * Each range is fetched with its own connection on worker threads, and models are passed to the consumer
+ * on the calling thread through a bounded queue, so slow consumers make workers wait instead of using up memory.
+ *
+ * @see Model#parallelScan(Config, ModelConsumer)
+ */
+public class ParallelScan {
+
+  public static class Config {
+    private String idColumn = "id";
+    private long chunkSize = 10000;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private int queueCapacity = 1000;
+    private ExecutorService executor;
+
+    /**
+     * integer column to split ranges. "id" by default
+     */
+    public Config idColumn(String idColumn) {
+      this.idColumn = idColumn;
+      return this;
+    }
+
+    /**
+     * size of id range fetched at once
+     */
+    public Config chunkSize(long chunkSize) {
+      if (chunkSize <= 0) {
+        throw new IllegalArgumentException(String.format("invalid chunk size: %d", chunkSize));
+      }
+      this.chunkSize = chunkSize;
+      return this;
+    }
+
+    /**
+     * number of ranges fetched concurrently. number of processors by default.
+     * Use a connection pool with enough size, or each worker opens its own connection.
+     */
+    public Config parallelism(int parallelism) {
+      if (parallelism <= 0) {
+        throw new IllegalArgumentException(String.format("invalid parallelism: %d", parallelism));
+      }
+      this.parallelism = parallelism;
+      return this;
+    }
+
+    /**
+     * number of fetched models waiting for the consumer
+     */
+    public Config queueCapacity(int queueCapacity) {
+      if (queueCapacity <= 0) {
+        throw new IllegalArgumentException(String.format("invalid queue capacity: %d", queueCapacity));
+      }
+      this.queueCapacity = queueCapacity;
+      return this;
+    }
+
+    /**
+     * Executor (or ForkJoinPool) to run workers. It is not shut down.
+     * A fixed thread pool is made for each scan by default.
+     */
+    public Config executor(ExecutorService executor) {
+      this.executor = executor;
+      return this;
+    }
+  }
+
+  /**
+   * marks a worker finished
+   */
+  private static final Object END = new Object();
+
+  private static final long POLL_MILLIS = 100;
+
+  private static final AtomicInteger threadCount = new AtomicInteger();
+
+  /**
+   * @return number of consumed models
+   */
+  static <T extends Model> long run(Model query, Config config, ModelConsumer<T> consumer) throws Exception {
+    if (query.isLimited()) {
+      throw new IllegalStateException("parallel scan cannot be used with limit or offset");
+    }
+
+    String id = String.format("%s.%s", query.getTableName(), config.idColumn);
+
+    ColumnarResult bounds = query.copyQuery()
+            .order("")
+            .select("min(%s), max(%s)", id, id)
+            .fetchColumns();
+    if (bounds.size() == 0 || bounds.isNull(0, 0)) {
+      return 0;
+    }
+    long min = bounds.getLong(0, 0);
+    long max = bounds.getLong(1, 0);
+
+    // max - min and chunk offsets overflow long for wide id ranges, so they are unsigned
+    long lastChunk = Long.divideUnsigned(max - min, config.chunkSize);
+    int workers = Long.compareUnsigned(lastChunk, config.parallelism) < 0 ? (int) lastChunk + 1 : config.parallelism;
+
+    AtomicLong nextChunk = new AtomicLong();
+    BlockingQueue<Object> queue = new ArrayBlockingQueue<>(config.queueCapacity);
+    AtomicBoolean cancelled = new AtomicBoolean();
+    AtomicReference<Throwable> error = new AtomicReference<>();
+
+    ExecutorService executor = config.executor != null ? config.executor : Executors.newFixedThreadPool(workers, r -> {
+      Thread t = new Thread(r, "simplemodel-scan-" + threadCount.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    });
+
+    List<Future<?>> futures = new ArrayList<>(workers);
+    long count = 0;
+
+    try {
+      for (int i = 0; i < workers; i++) {
+        futures.add(executor.submit(() -> {
+          try {
+            long index;
+            while (!cancelled.get() && Long.compareUnsigned(index = nextChunk.getAndIncrement(), lastChunk) <= 0) {
+              long start = min + index * config.chunkSize;
+              // inclusive, not to overflow near Long.MAX_VALUE
+              long end = Long.compareUnsigned(max - start, config.chunkSize - 1) <= 0 ? max : start + config.chunkSize - 1;
+              Model chunk = query.copyQuery()
+                      .where(String.format("%s >= ? and %s <= ?", id, id), start, end);
+              chunk.forEach(m -> put(queue, m, cancelled));
+            }
+          } catch (CancellationException e) {
+            // stopped by the consumer or other workers
+          } catch (Throwable e) {
+            // errors too, or the scan ends as if the worker finished
+            error.compareAndSet(null, e);
+            cancelled.set(true);
+          } finally {
+            try {
+              put(queue, END, cancelled);
+            } catch (CancellationException | InterruptedException ignored) {
+            }
+          }
+        }));
+      }
+
+      int finished = 0;
+      while (finished < workers && error.get() == null) {
+        Object o = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+        if (o == null) continue;
+
+        if (o == END) {
+          finished++;
+        } else {
+          consumer.accept((T) o);
+          count++;
+        }
+      }
+    } finally {
+      cancelled.set(true);
+      queue.clear();
+      for (Future<?> f : futures) {
+        try {
+          f.get();
+        } catch (Exception ignored) {
+        }
+      }
+      if (config.executor == null) {
+        executor.shutdown();
+      }
+    }
+
+    Throwable e = error.get();
+    if (e instanceof Error) {
+      throw (Error) e;
+    }
+    if (e != null) {
+      throw (Exception) e;
+    }
+    return count;
+  }
+
+  /**
+   * wait for the consumer until cancelled
+   */
+  private static void put(BlockingQueue<Object> queue, Object o, AtomicBoolean cancelled) throws InterruptedException {
+    while (!queue.offer(o, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+      if (cancelled.get()) {
+        throw new CancellationException();
+      }
+    }
+  }
+
+}
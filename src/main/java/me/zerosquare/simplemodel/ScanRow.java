@@ -0,0 +1,103 @@
+package me.zerosquare.simplemodel;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Read-only view of the current row while scanning.
+ * The same instance is reused for every row of a scan, so do not keep it (or use it) after the consumer returns.
+ * Column indexes start from 1 like JDBC.
+ */
+public class ScanRow {
+
+  private final ResultSet rs;
+  private final Map<String, Integer> indexes;
+  private final int columnCount;
+  private long rowNumber;
+
+  ScanRow(String tableName, ResultSet rs) throws SQLException {
+    this.rs = rs;
+
+    ResultSetMetaData meta = rs.getMetaData();
+    this.columnCount = meta.getColumnCount();
+    this.indexes = new HashMap<>();
+
+    // same keys with fetched models: label, and `table`.`column` for joined tables
+    for (int col = 1; col <= columnCount; col++) {
+      String table = meta.getTableName(col).toLowerCase();
+      String label = meta.getColumnLabel(col).toLowerCase();
+      indexes.putIfAbsent(label, col);
+      if (!table.isEmpty() && !table.equals(tableName)) {
+        indexes.putIfAbsent(table + "." + meta.getColumnName(col).toLowerCase(), col);
+      }
+    }
+  }
+
+  void next() {
+    rowNumber++;
+  }
+
+  /**
+   * @return 1 for the first row
+   */
+  public long getRowNumber() {
+    return rowNumber;
+  }
+
+  public int getColumnCount() {
+    return columnCount;
+  }
+
+  /**
+   * Resolve column index once and use index getters in the loop.
+   *
+   * @throws IllegalArgumentException if no such column
+   */
+  public int indexOf(String columnName) {
+    Integer idx = indexes.get(columnName.toLowerCase());
+    if (idx == null) {
+      throw new IllegalArgumentException(String.format("no such column: %s", columnName));
+    }
+    return idx;
+  }
+
+  public long getLong(int columnIndex) throws SQLException {
+    return rs.getLong(columnIndex);
+  }
+
+  public int getInt(int columnIndex) throws SQLException {
+    return rs.getInt(columnIndex);
+  }
+
+  public double getDouble(int columnIndex) throws SQLException {
+    return rs.getDouble(columnIndex);
+  }
+
+  public boolean getBoolean(int columnIndex) throws SQLException {
+    return rs.getBoolean(columnIndex);
+  }
+
+  public String getString(int columnIndex) throws SQLException {
+    return rs.getString(columnIndex);
+  }
+
+  public Timestamp getTimestamp(int columnIndex) throws SQLException {
+    return rs.getTimestamp(columnIndex);
+  }
+
+  public Object getObject(int columnIndex) throws SQLException {
+    return rs.getObject(columnIndex);
+  }
+
+  /**
+   * @return true if the last read column was SQL NULL (primitive getters return 0 or false for NULL)
+   */
+  public boolean wasNull() throws SQLException {
+    return rs.wasNull();
+  }
+
+}
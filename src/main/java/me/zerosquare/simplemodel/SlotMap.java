@@ -0,0 +1,363 @@
+package me.zerosquare.simplemodel;
+
+import java.util.*;
+
+/**
+ * Compact column values of a row.
+ * Column names are mapped to slot indexes by a Schema shared by all rows of the same query,
+ * and each row only holds an Object[] of values and a BitSet of modified slots.
+ * Numeric and boolean columns are kept unboxed in a long[] with a BitSet of nulls, and boxed only when accessed as Object.
+ * Keys not in the schema (e.g. put after fetch) are kept in an extra map.
+ */
+class SlotMap extends AbstractMap<String, Object> {
+
+  /**
+   * Type of a slot. Slots other than OBJECT are stored in long[] (double as raw bits).
+   */
+  enum Kind {
+    OBJECT,
+    INT,
+    LONG,
+    BOOLEAN,
+    DOUBLE
+  }
+
+  /**
+   * Column names to slot indexes
+   */
+  static class Schema {
+    private final String[] names;
+    private final Map<String, Integer> indexes;
+    private final Kind[] kinds;
+
+    /**
+     * index of primitive slot in long[] (-1 for OBJECT slot)
+     */
+    private final int[] primitiveIndexes;
+    private final int primitiveCount;
+
+    Schema(List<String> names, List<Kind> kinds) {
+      this.names = names.toArray(new String[0]);
+      this.kinds = kinds.toArray(new Kind[0]);
+      this.indexes = new HashMap<>(names.size() * 4 / 3 + 1);
+      this.primitiveIndexes = new int[this.names.length];
+
+      int primitives = 0;
+      for (int i = 0; i < this.names.length; i++) {
+        indexes.putIfAbsent(this.names[i], i);
+        primitiveIndexes[i] = this.kinds[i] != Kind.OBJECT ? primitives++ : -1;
+      }
+      this.primitiveCount = primitives;
+    }
+
+    int size() {
+      return names.length;
+    }
+
+    /**
+     * @return -1 if not exists
+     */
+    int indexOf(Object name) {
+      Integer idx = indexes.get(name);
+      return idx != null ? idx : -1;
+    }
+
+    String nameOf(int index) {
+      return names[index];
+    }
+
+    Kind kindOf(int index) {
+      return kinds[index];
+    }
+  }
+
+  /**
+   * marks removed slot
+   */
+  private static final Object ABSENT = new Object();
+
+  /**
+   * marks slot whose value is in primitives
+   */
+  private static final Object PRIMITIVE = new Object();
+
+  private final Schema schema;
+  private final Object[] values;
+
+  private final long[] primitives;
+
+  /**
+   * primitive slots of SQL NULL. null if there is no null
+   */
+  private BitSet nulls;
+
+  /**
+   * slots put since created or last snapshot
+   */
+  private final BitSet dirty;
+
+  private Map<String, Object> extra;
+
+  /**
+   * slots should be filled by setObject or setPrimitive
+   */
+  SlotMap(Schema schema) {
+    this(schema, new Object[schema.size()], schema.primitiveCount > 0 ? new long[schema.primitiveCount] : null,
+            null, new BitSet(), null);
+  }
+
+  private SlotMap(Schema schema, Object[] values, long[] primitives, BitSet nulls, BitSet dirty, Map<String, Object> extra) {
+    this.schema = schema;
+    this.values = values;
+    this.primitives = primitives;
+    this.nulls = nulls;
+    this.dirty = dirty;
+    this.extra = extra;
+  }
+
+  void setObject(int slot, Object value) {
+    values[slot] = value;
+  }
+
+  /**
+   * @param bits value of the slot. raw long bits for DOUBLE, 1 or 0 for BOOLEAN
+   */
+  void setPrimitive(int slot, long bits, boolean isNull) {
+    int pidx = schema.primitiveIndexes[slot];
+    if (pidx < 0) {
+      throw new IllegalArgumentException(String.format("slot %d is not primitive", slot));
+    }
+
+    values[slot] = PRIMITIVE;
+    primitives[pidx] = bits;
+    if (isNull) {
+      if (nulls == null) {
+        nulls = new BitSet();
+      }
+      nulls.set(slot);
+    }
+  }
+
+  Schema getSchema() {
+    return schema;
+  }
+
+  /**
+   * @return copy of current values, and clear modified slots of this map
+   */
+  SlotMap snapshot() {
+    dirty.clear();
+    return new SlotMap(schema, values.clone(),
+            primitives != null ? primitives.clone() : null,
+            nulls != null ? (BitSet) nulls.clone() : null,
+            new BitSet(), extra != null ? new HashMap<>(extra) : null);
+  }
+
+  /**
+   * Columns which exist in the old map and have different values.
+   * Only slots put since the snapshot are compared.
+   */
+  Map<String, Object> modifiedSince(SlotMap old) {
+    Map<String, Object> modified = new HashMap<>();
+
+    for (int i = dirty.nextSetBit(0); i >= 0; i = dirty.nextSetBit(i + 1)) {
+      if (values[i] == ABSENT || old.values[i] == ABSENT) continue;
+
+      Object v = slotValue(i);
+      if (!Objects.equals(old.slotValue(i), v)) {
+        modified.put(schema.nameOf(i), v);
+      }
+    }
+
+    if (extra != null && old.extra != null) {
+      for (Map.Entry<String, Object> kv : extra.entrySet()) {
+        String k = kv.getKey();
+        if (old.extra.containsKey(k) && !Objects.equals(old.extra.get(k), kv.getValue())) {
+          modified.put(k, kv.getValue());
+        }
+      }
+    }
+
+    return modified;
+  }
+
+  /**
+   * boxed value of the slot
+   */
+  private Object slotValue(int slot) {
+    Object v = values[slot];
+    if (v == ABSENT) return null;
+    if (v != PRIMITIVE) return v;
+    if (nulls != null && nulls.get(slot)) return null;
+
+    long bits = primitives[schema.primitiveIndexes[slot]];
+    switch (schema.kinds[slot]) {
+      case INT:
+        return (int) bits;
+      case LONG:
+        return bits;
+      case BOOLEAN:
+        return bits != 0;
+      case DOUBLE:
+        return Double.longBitsToDouble(bits);
+      default:
+        throw new IllegalStateException();
+    }
+  }
+
+  @Override
+  public Object get(Object key) {
+    int idx = schema.indexOf(key);
+    if (idx >= 0) {
+      return slotValue(idx);
+    }
+    return extra != null ? extra.get(key) : null;
+  }
+
+  /**
+   * Get numeric value without boxing if possible
+   *
+   * @throws NullPointerException if value is null
+   * @throws ClassCastException if value is not a number
+   */
+  long getLong(String key) {
+    int idx = schema.indexOf(key);
+    if (idx >= 0 && values[idx] == PRIMITIVE) {
+      checkNotNull(idx, key);
+      checkNumeric(idx, key);
+
+      long bits = primitives[schema.primitiveIndexes[idx]];
+      return schema.kinds[idx] == Kind.DOUBLE ? (long) Double.longBitsToDouble(bits) : bits;
+    }
+    return ((Number) get(key)).longValue();
+  }
+
+  /**
+   * Get numeric value without boxing if possible
+   *
+   * @throws NullPointerException if value is null
+   * @throws ClassCastException if value is not a number
+   */
+  double getDouble(String key) {
+    int idx = schema.indexOf(key);
+    if (idx >= 0 && values[idx] == PRIMITIVE) {
+      checkNotNull(idx, key);
+      checkNumeric(idx, key);
+
+      long bits = primitives[schema.primitiveIndexes[idx]];
+      return schema.kinds[idx] == Kind.DOUBLE ? Double.longBitsToDouble(bits) : bits;
+    }
+    return ((Number) get(key)).doubleValue();
+  }
+
+  /**
+   * boolean is stored as a primitive, but it is not a number as in the HashMap storage
+   */
+  private void checkNumeric(int slot, String key) {
+    if (schema.kinds[slot] == Kind.BOOLEAN) {
+      throw new ClassCastException(String.format("column '%s' is not a number", key));
+    }
+  }
+
+  private void checkNotNull(int slot, String key) {
+    if (nulls != null && nulls.get(slot)) {
+      throw new NullPointerException(String.format("column '%s' is null", key));
+    }
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    int idx = schema.indexOf(key);
+    if (idx >= 0) {
+      return values[idx] != ABSENT;
+    }
+    return extra != null && extra.containsKey(key);
+  }
+
+  @Override
+  public Object put(String key, Object value) {
+    int idx = schema.indexOf(key);
+    if (idx >= 0) {
+      Object old = slotValue(idx);
+      values[idx] = value;
+      dirty.set(idx);
+      return old;
+    }
+
+    if (extra == null) {
+      extra = new HashMap<>();
+    }
+    return extra.put(key, value);
+  }
+
+  @Override
+  public Object remove(Object key) {
+    int idx = schema.indexOf(key);
+    if (idx >= 0) {
+      Object old = slotValue(idx);
+      values[idx] = ABSENT;
+      dirty.set(idx);
+      return old;
+    }
+    return extra != null ? extra.remove(key) : null;
+  }
+
+  @Override
+  public void clear() {
+    Arrays.fill(values, ABSENT);
+    dirty.set(0, values.length);
+    extra = null;
+  }
+
+  @Override
+  public int size() {
+    int n = 0;
+    for (Object v : values) {
+      if (v != ABSENT) n++;
+    }
+    return n + (extra != null ? extra.size() : 0);
+  }
+
+  @Override
+  public Set<Entry<String, Object>> entrySet() {
+    return new AbstractSet<Entry<String, Object>>() {
+      @Override
+      public Iterator<Entry<String, Object>> iterator() {
+        return new Iterator<Entry<String, Object>>() {
+          private int next = nextSlot(0);
+          private final Iterator<Entry<String, Object>> extraIt = extra != null ? extra.entrySet().iterator() : null;
+
+          @Override
+          public boolean hasNext() {
+            return next < values.length || (extraIt != null && extraIt.hasNext());
+          }
+
+          @Override
+          public Entry<String, Object> next() {
+            if (next < values.length) {
+              int idx = next;
+              next = nextSlot(idx + 1);
+              return new SimpleImmutableEntry<>(schema.nameOf(idx), slotValue(idx));
+            }
+            if (extraIt != null) {
+              return extraIt.next();
+            }
+            throw new NoSuchElementException();
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return SlotMap.this.size();
+      }
+    };
+  }
+
+  private int nextSlot(int from) {
+    int i = from;
+    while (i < values.length && values[i] == ABSENT) i++;
+    return i;
+  }
+
+}
@@ -3,6 +3,7 @@ package me.zerosquare.simplemodel;
 import me.zerosquare.simplemodel.internals.Logger;
 
 import java.sql.Connection;
+import java.util.Set;
 
 public class Transaction {
 
@@ -19,6 +20,20 @@ public class Transaction {
      * @throws Exception
      */
     public static void execute(TransactionExecutor transactionExecutor) throws Exception {
+        execute(transactionExecutor, false);
+    }
+
+    /**
+     * Same as execute, and find by id returns the same instance for the same row without a query in the transaction.
+     * Rows are evicted by update and delete of models, but not by raw SQL statements.
+     * @param transactionExecutor
+     * @throws Exception
+     */
+    public static void executeWithIdentityMap(TransactionExecutor transactionExecutor) throws Exception {
+        execute(transactionExecutor, true);
+    }
+
+    private static void execute(TransactionExecutor transactionExecutor, boolean useIdentityMap) throws Exception {
         Logger.i("begin transaction");
 
         Connection conn = null;
@@ -32,7 +47,7 @@ public class Transaction {
 
             conn.setAutoCommit(false);
 
-            Connector.enableCustomConnection(conn, null);
+            Connector.enableCustomConnection(conn, null, useIdentityMap);
 
             // all statements will be executed by prepared custom connection
             transactionExecutor.execute();
@@ -45,7 +60,7 @@ public class Transaction {
                 conn.rollback();
             }
 
-            Logger.e("transaction rolled back - %s", Logger.getExceptionString(e));
+            Logger.e("transaction rolled back", e);
 
             throw e;
         } finally {
@@ -53,9 +68,13 @@ public class Transaction {
                 conn.setAutoCommit(autoCommitWas);
             }
 
+            Set<String> writtenTables = Connector.getWrittenTables();
             Connector.disableCustomConnection();
 
-            Connector.tryClose(conn);
+            Connector.releaseDBConnection(conn);
+
+            // other threads may have cached rows before commit
+            ModelCache.invalidateTables(writtenTables);
         }
 
         Logger.i("end transaction");
@@ -0,0 +1,18 @@
+package me.zerosquare.simplemodel.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * A model field referenced by a foreign key column of this model, loaded by Model.includes
+ */
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface BelongsTo {
+  /**
+   * foreign key column of this model. `{field name}_id` by default
+   */
+  String foreignKey() default "";
+}
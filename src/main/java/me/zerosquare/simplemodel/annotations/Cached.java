@@ -0,0 +1,23 @@
+package me.zerosquare.simplemodel.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Cache rows found by id of the table in memory, shared by threads. See ModelCache
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Cached {
+  /**
+   * maximum number of rows. the least recently used row is evicted when full
+   */
+  int maxSize() default 1000;
+
+  /**
+   * rows expire after this. never expire if 0
+   */
+  long ttlSeconds() default 60;
+}
@@ -0,0 +1,18 @@
+package me.zerosquare.simplemodel.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * A List field of models having a foreign key column to id of this model, loaded by Model.includes
+ */
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface HasMany {
+  /**
+   * foreign key column of the associated model
+   */
+  String foreignKey();
+}
@@ -0,0 +1,10 @@
+package me.zerosquare.simplemodel.exceptions;
+
+/**
+ * Thrown when a cursor fails to read or map a row while iterating.
+ */
+public class CursorException extends RuntimeException {
+    public CursorException(Throwable cause) {
+        super(cause);
+    }
+}
@@ -1,9 +1,10 @@
 package me.zerosquare.simplemodel.extensions;
 
 import me.zerosquare.simplemodel.Model;
+import me.zerosquare.simplemodel.exceptions.ConstructionException;
 
 import java.sql.Timestamp;
-import java.util.List;
+import java.util.Collection;
 
 /**
  * Use deleted_at timestamp flag to indicate deleted row or not.
@@ -25,11 +26,40 @@ public class SoftDeleteModel extends Model {
   }
 
   @Override
-  public <T extends Model> List<T> fetch() throws Exception {
-    if (!includeDeleted) {
+  protected boolean isDeleteHooked() {
+    return false;
+  }
+
+  /**
+   * Soft delete rows by ids
+   */
+  @Override
+  public long deleteByIds(Collection<Long> ids, int chunkSize) throws Exception {
+    return updateColumnByIds(ids, COLUMN_NAME_DELETED_AT, new Timestamp(System.currentTimeMillis()), chunkSize);
+  }
+
+  @Override
+  protected void beforeSelect() {
+    if (!includeDeleted && !deletedFilterReserved) {
       where(String.format("%s.%s is null", getTableName(), COLUMN_NAME_DELETED_AT));
+      deletedFilterReserved = true;
     }
-    return super.fetch();
+  }
+
+  /**
+   * deleted rows found by includeDeleted should not be returned to other finds
+   */
+  @Override
+  protected boolean isCacheableFind() {
+    return super.isCacheableFind() && !includeDeleted;
+  }
+
+  @Override
+  protected <T extends Model> T copyQuery() throws ConstructionException {
+    SoftDeleteModel copy = super.copyQuery();
+    copy.includeDeleted = includeDeleted;
+    copy.deletedFilterReserved = deletedFilterReserved;
+    return (T) copy;
   }
 
   public <T extends Model> T includeDeleted() {
@@ -43,4 +73,6 @@ public class SoftDeleteModel extends Model {
 
   private boolean includeDeleted = false;
 
+  private boolean deletedFilterReserved = false;
+
 }
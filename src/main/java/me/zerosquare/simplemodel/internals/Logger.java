@@ -1,39 +1,140 @@
 package me.zerosquare.simplemodel.internals;
 
 import org.slf4j.LoggerFactory;
+import org.slf4j.event.Level;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
 
+/**
+ * Messages use SLF4J `{}` placeholders, and are formatted only if the level is enabled.
+ * A Throwable as the last argument is logged with its stack trace.
+ * Fixed arity methods do not allocate the varargs array, but guard hot paths with isTraceEnabled() anyway
+ * to avoid boxing of the arguments.
+ */
 public class Logger {
   private static final org.slf4j.Logger logger = LoggerFactory.getLogger("simplemodel");
 
-  private static long getThreadId() {
-    return Thread.currentThread().getId();
+  public static boolean isTraceEnabled() {
+    return logger.isTraceEnabled();
   }
 
-  private static String makeLine(String str, Object... args) {
-    return String.format(str, args);
+  public static boolean isDebugEnabled() {
+    return logger.isDebugEnabled();
   }
 
-  public static void d(String str, Object... args) {
-    logger.debug(makeLine(str, args));
+  public static boolean isEnabled(Level level) {
+    switch (level) {
+      case TRACE:
+        return logger.isTraceEnabled();
+      case DEBUG:
+        return logger.isDebugEnabled();
+      case INFO:
+        return logger.isInfoEnabled();
+      case WARN:
+        return logger.isWarnEnabled();
+      default:
+        return logger.isErrorEnabled();
+    }
   }
 
-  public static void t(String str, Object... args) {
-    logger.trace(makeLine(str, args));
+  public static void log(Level level, String format, Object arg) {
+    switch (level) {
+      case TRACE:
+        t(format, arg);
+        break;
+      case DEBUG:
+        d(format, arg);
+        break;
+      case INFO:
+        i(format, arg);
+        break;
+      case WARN:
+        w(format, arg);
+        break;
+      default:
+        e(format, arg);
+    }
   }
 
-  public static void i(String str, Object... args) {
-    logger.info(makeLine(str, args));
+  public static void t(String msg) {
+    if (logger.isTraceEnabled()) logger.trace(msg);
   }
 
-  public static void w(String str, Object... args) {
-    logger.warn(makeLine(str, args));
+  public static void t(String format, Object arg) {
+    if (logger.isTraceEnabled()) logger.trace(format, arg);
   }
 
-  public static void e(String str, Object... args) {
-    logger.error(makeLine(str, args));
+  public static void t(String format, Object arg1, Object arg2) {
+    if (logger.isTraceEnabled()) logger.trace(format, arg1, arg2);
+  }
+
+  public static void t(String format, Object... args) {
+    if (logger.isTraceEnabled()) logger.trace(format, args);
+  }
+
+  public static void d(String msg) {
+    if (logger.isDebugEnabled()) logger.debug(msg);
+  }
+
+  public static void d(String format, Object arg) {
+    if (logger.isDebugEnabled()) logger.debug(format, arg);
+  }
+
+  public static void d(String format, Object arg1, Object arg2) {
+    if (logger.isDebugEnabled()) logger.debug(format, arg1, arg2);
+  }
+
+  public static void d(String format, Object... args) {
+    if (logger.isDebugEnabled()) logger.debug(format, args);
+  }
+
+  public static void i(String msg) {
+    if (logger.isInfoEnabled()) logger.info(msg);
+  }
+
+  public static void i(String format, Object arg) {
+    if (logger.isInfoEnabled()) logger.info(format, arg);
+  }
+
+  public static void i(String format, Object arg1, Object arg2) {
+    if (logger.isInfoEnabled()) logger.info(format, arg1, arg2);
+  }
+
+  public static void i(String format, Object... args) {
+    if (logger.isInfoEnabled()) logger.info(format, args);
+  }
+
+  public static void w(String msg) {
+    if (logger.isWarnEnabled()) logger.warn(msg);
+  }
+
+  public static void w(String format, Object arg) {
+    if (logger.isWarnEnabled()) logger.warn(format, arg);
+  }
+
+  public static void w(String format, Object arg1, Object arg2) {
+    if (logger.isWarnEnabled()) logger.warn(format, arg1, arg2);
+  }
+
+  public static void w(String format, Object... args) {
+    if (logger.isWarnEnabled()) logger.warn(format, args);
+  }
+
+  public static void e(String msg) {
+    if (logger.isErrorEnabled()) logger.error(msg);
+  }
+
+  public static void e(String format, Object arg) {
+    if (logger.isErrorEnabled()) logger.error(format, arg);
+  }
+
+  public static void e(String format, Object arg1, Object arg2) {
+    if (logger.isErrorEnabled()) logger.error(format, arg1, arg2);
+  }
+
+  public static void e(String format, Object... args) {
+    if (logger.isErrorEnabled()) logger.error(format, args);
   }
 
   public static String getExceptionString(Exception e) {
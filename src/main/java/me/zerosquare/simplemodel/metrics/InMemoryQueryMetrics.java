@@ -0,0 +1,206 @@
+package me.zerosquare.simplemodel.metrics;
+
+import me.zerosquare.simplemodel.Model.QueryType;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps latency histograms per table and query type, and per normalized SQL.
+ * <pre>
+ * InMemoryQueryMetrics metrics = new InMemoryQueryMetrics();
+ * Model.addQueryListener(metrics);
+ * ...
+ * // hot queries first
+ * metrics.getSqlStats().forEach(s -&gt; ...);
+ * </pre>
+ */
+public class InMemoryQueryMetrics implements QueryListener {
+
+  /**
+   * Statistics of a group of queries. Times are in nanoseconds.
+   */
+  public static class QueryStats {
+    private final String tableName;
+    private final QueryType queryType;
+    private final String sql;
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder prepareNanos = new LongAdder();
+    private final LongAdder executeNanos = new LongAdder();
+    private final LongAdder mappingNanos = new LongAdder();
+
+    private QueryStats(String tableName, QueryType queryType, String sql) {
+      this.tableName = tableName;
+      this.queryType = queryType;
+      this.sql = sql;
+    }
+
+    private void record(QueryEvent e) {
+      latency.record(e.getTotalNanos());
+      if (!e.isSuccess()) failures.increment();
+      if (e.getRows() > 0) rows.add(e.getRows());
+      prepareNanos.add(e.getPrepareNanos());
+      executeNanos.add(e.getExecuteNanos());
+      mappingNanos.add(e.getMappingNanos());
+    }
+
+    /**
+     * @return null for Model.execute(sql, fn)
+     */
+    public String getTableName() {
+      return tableName;
+    }
+
+    /**
+     * @return null for Model.execute(sql, fn)
+     */
+    public QueryType getQueryType() {
+      return queryType;
+    }
+
+    /**
+     * @return normalized SQL, null for stats per table and query type
+     */
+    public String getSql() {
+      return sql;
+    }
+
+    /**
+     * histogram of total time
+     */
+    public LatencyHistogram getLatency() {
+      return latency;
+    }
+
+    public long getCount() {
+      return latency.getCount();
+    }
+
+    public long getFailureCount() {
+      return failures.sum();
+    }
+
+    public long getRows() {
+      return rows.sum();
+    }
+
+    public long getTotalNanos() {
+      return latency.getTotal();
+    }
+
+    public long getPrepareNanos() {
+      return prepareNanos.sum();
+    }
+
+    public long getExecuteNanos() {
+      return executeNanos.sum();
+    }
+
+    public long getMappingNanos() {
+      return mappingNanos.sum();
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%s %s %s - count: %d failures: %d rows: %d mean: %.0fns p50: %dns p99: %dns max: %dns",
+              tableName, queryType, sql != null ? sql : "", getCount(), getFailureCount(), getRows(),
+              latency.getMean(), latency.getValueAtPercentile(50), latency.getValueAtPercentile(99), latency.getMax());
+    }
+  }
+
+  private static class Key {
+    private final String tableName;
+    private final QueryType queryType;
+
+    Key(String tableName, QueryType queryType) {
+      this.tableName = tableName;
+      this.queryType = queryType;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) return false;
+      Key k = (Key) o;
+      return Objects.equals(tableName, k.tableName) && queryType == k.queryType;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(tableName, queryType);
+    }
+  }
+
+  public static final int DEFAULT_MAX_SQL_ENTRIES = 1000;
+
+  private final int maxSqlEntries;
+
+  private final ConcurrentHashMap<Key, QueryStats> tableStats = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, QueryStats> sqlStats = new ConcurrentHashMap<>();
+
+  public InMemoryQueryMetrics() {
+    this(DEFAULT_MAX_SQL_ENTRIES);
+  }
+
+  /**
+   * @param maxSqlEntries SQL not seen yet is not tracked per SQL once this number of SQL are tracked
+   */
+  public InMemoryQueryMetrics(int maxSqlEntries) {
+    this.maxSqlEntries = maxSqlEntries;
+  }
+
+  @Override
+  public void onQuery(QueryEvent event) {
+    tableStats.computeIfAbsent(new Key(event.getTableName(), event.getQueryType()),
+            k -> new QueryStats(k.tableName, k.queryType, null)).record(event);
+
+    String sql = event.getNormalizedSql();
+    QueryStats stats = sqlStats.get(sql);
+    if (stats == null && sqlStats.size() < maxSqlEntries) {
+      stats = sqlStats.computeIfAbsent(sql, s -> new QueryStats(event.getTableName(), event.getQueryType(), s));
+    }
+    if (stats != null) {
+      stats.record(event);
+    }
+  }
+
+  /**
+   * @return null if no query of the table and type
+   */
+  public QueryStats getStats(String tableName, QueryType queryType) {
+    return tableStats.get(new Key(tableName, queryType));
+  }
+
+  /**
+   * @return stats per table and query type, in descending order of total time
+   */
+  public List<QueryStats> getStats() {
+    return sorted(tableStats.values());
+  }
+
+  /**
+   * @return stats per normalized SQL, in descending order of total time
+   */
+  public List<QueryStats> getSqlStats() {
+    return sorted(sqlStats.values());
+  }
+
+  private static List<QueryStats> sorted(Iterable<QueryStats> stats) {
+    List<QueryStats> list = new ArrayList<>();
+    stats.forEach(list::add);
+    list.sort(Comparator.comparingLong(QueryStats::getTotalNanos).reversed());
+    return list;
+  }
+
+  public void reset() {
+    tableStats.clear();
+    sqlStats.clear();
+  }
+
+}
@@ -0,0 +1,124 @@
+package me.zerosquare.simplemodel.metrics;
+
+import me.zerosquare.simplemodel.Model.QueryType;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A query executed by Model. Times are in nanoseconds.
+ */
+public class QueryEvent {
+
+  private final QueryType queryType;
+  private final String tableName;
+  private final String sql;
+  private final List<Object> parameters;
+  private final long prepareNanos;
+  private final long executeNanos;
+  private final long mappingNanos;
+  private final long rows;
+  private final Throwable error;
+
+  private String normalizedSql;
+
+  /**
+   * @param queryType null for Model.execute(sql, fn)
+   * @param tableName null for Model.execute(sql, fn)
+   * @param parameters bound parameters in order. it is not copied
+   * @param rows -1 if unknown
+   * @param error null if succeeded
+   */
+  public QueryEvent(QueryType queryType, String tableName, String sql, List<Object> parameters,
+                    long prepareNanos, long executeNanos, long mappingNanos, long rows, Throwable error) {
+    this.queryType = queryType;
+    this.tableName = tableName;
+    this.sql = sql;
+    this.parameters = parameters != null ? Collections.unmodifiableList(parameters) : Collections.emptyList();
+    this.prepareNanos = prepareNanos;
+    this.executeNanos = executeNanos;
+    this.mappingNanos = mappingNanos;
+    this.rows = rows;
+    this.error = error;
+  }
+
+  /**
+   * @return null for Model.execute(sql, fn)
+   */
+  public QueryType getQueryType() {
+    return queryType;
+  }
+
+  /**
+   * @return null for Model.execute(sql, fn)
+   */
+  public String getTableName() {
+    return tableName;
+  }
+
+  public String getSql() {
+    return sql;
+  }
+
+  /**
+   * Parameters bound by the model. Only first 256 parameters are kept for batches,
+   * and parameters set by Model.execute(sql, fn) directly are not included.
+   */
+  public List<Object> getParameters() {
+    return parameters;
+  }
+
+  /**
+   * SQL without literals and with collapsed IN lists, to group the same queries. It is made on the first call.
+   */
+  public String getNormalizedSql() {
+    if (normalizedSql == null) {
+      normalizedSql = SqlNormalizer.normalize(sql);
+    }
+    return normalizedSql;
+  }
+
+  /**
+   * time to get connection and prepare statement
+   */
+  public long getPrepareNanos() {
+    return prepareNanos;
+  }
+
+  /**
+   * time to execute statement. it includes mapping time if mapping is not measured separately
+   */
+  public long getExecuteNanos() {
+    return executeNanos;
+  }
+
+  /**
+   * time to read ResultSet into models (fetch)
+   */
+  public long getMappingNanos() {
+    return mappingNanos;
+  }
+
+  public long getTotalNanos() {
+    return prepareNanos + executeNanos + mappingNanos;
+  }
+
+  /**
+   * @return fetched or affected rows, -1 if unknown
+   */
+  public long getRows() {
+    return rows;
+  }
+
+  public boolean isSuccess() {
+    return error == null;
+  }
+
+  /**
+   * @return null if succeeded
+   */
+  public Throwable getError() {
+    return error;
+  }
+
+}
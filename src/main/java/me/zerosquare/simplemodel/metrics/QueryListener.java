@@ -0,0 +1,12 @@
+package me.zerosquare.simplemodel.metrics;
+
+/**
+ * Called after every query executed by Model, on the thread executing the query.
+ * It should return quickly. Exceptions from listeners are logged and ignored.
+ *
+ * @see me.zerosquare.simplemodel.Model#addQueryListener(QueryListener)
+ */
+@FunctionalInterface
+public interface QueryListener {
+  void onQuery(QueryEvent event);
+}
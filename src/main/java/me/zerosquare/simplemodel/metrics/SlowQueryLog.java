@@ -0,0 +1,392 @@
+package me.zerosquare.simplemodel.metrics;
+
+import me.zerosquare.simplemodel.Model.QueryType;
+import me.zerosquare.simplemodel.internals.Logger;
+
+import java.net.URL;
+import java.security.CodeSource;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Captures queries slower than thresholds with bound parameters and the caller stack, into a bounded ring buffer.
+ * Captures are rate limited, and the caller stack is taken only for captured queries.
+ * <pre>
+ * SlowQueryLog slowQueries = new SlowQueryLog(new SlowQueryLog.Config()
+ *   .thresholdMillis(QueryType.SELECT, 100)
+ *   .redactParameters(true));
+ * Model.addQueryListener(slowQueries);
+ * ...
+ * String report = slowQueries.dump();
+ * </pre>
+ */
+public class SlowQueryLog implements QueryListener {
+
+  public static class Config {
+    private long defaultThresholdMillis = 1000;
+    private final Map<QueryType, Long> thresholdMillis = new EnumMap<>(QueryType.class);
+    private int capacity = 100;
+    private int maxCapturesPerSecond = 10;
+    private int maxStackDepth = 16;
+    private Function<Object, Object> parameterRedactor;
+    private boolean logCaptured = true;
+
+    /**
+     * for query types without threshold and Model.execute(sql, fn)
+     */
+    public Config defaultThresholdMillis(long millis) {
+      this.defaultThresholdMillis = millis;
+      return this;
+    }
+
+    public Config thresholdMillis(QueryType queryType, long millis) {
+      thresholdMillis.put(queryType, millis);
+      return this;
+    }
+
+    /**
+     * number of slow queries kept. the oldest is dropped when full
+     */
+    public Config capacity(int capacity) {
+      if (capacity <= 0) {
+        throw new IllegalArgumentException(String.format("invalid capacity: %d", capacity));
+      }
+      this.capacity = capacity;
+      return this;
+    }
+
+    /**
+     * slow queries over this rate are counted but not captured
+     */
+    public Config maxCapturesPerSecond(int max) {
+      this.maxCapturesPerSecond = max;
+      return this;
+    }
+
+    /**
+     * frames of the caller stack kept, excluding frames of this library
+     */
+    public Config maxStackDepth(int depth) {
+      this.maxStackDepth = depth;
+      return this;
+    }
+
+    /**
+     * Replace each parameter by the function before kept, e.g. to mask personal data
+     */
+    public Config parameterRedactor(Function<Object, Object> redactor) {
+      this.parameterRedactor = redactor;
+      return this;
+    }
+
+    /**
+     * Do not keep parameter values at all
+     */
+    public Config redactParameters(boolean redact) {
+      this.parameterRedactor = redact ? v -> v != null ? "<redacted>" : null : null;
+      return this;
+    }
+
+    /**
+     * log each captured query at warn level. true by default
+     */
+    public Config logCaptured(boolean log) {
+      this.logCaptured = log;
+      return this;
+    }
+
+    long getThresholdNanos(QueryType queryType) {
+      Long millis = queryType != null ? thresholdMillis.get(queryType) : null;
+      return TimeUnit.MILLISECONDS.toNanos(millis != null ? millis : defaultThresholdMillis);
+    }
+  }
+
+  /**
+   * A captured slow query. Times are in nanoseconds.
+   */
+  public static class SlowQuery {
+    private final long capturedAt;
+    private final QueryType queryType;
+    private final String tableName;
+    private final String sql;
+    private final List<Object> parameters;
+    private final long rows;
+    private final long totalNanos;
+    private final long prepareNanos;
+    private final long executeNanos;
+    private final long mappingNanos;
+    private final Throwable error;
+    private final String threadName;
+    private final List<StackTraceElement> callerStack;
+
+    private SlowQuery(QueryEvent e, List<Object> parameters, List<StackTraceElement> callerStack) {
+      this.capturedAt = System.currentTimeMillis();
+      this.queryType = e.getQueryType();
+      this.tableName = e.getTableName();
+      this.sql = e.getSql();
+      this.parameters = parameters;
+      this.rows = e.getRows();
+      this.totalNanos = e.getTotalNanos();
+      this.prepareNanos = e.getPrepareNanos();
+      this.executeNanos = e.getExecuteNanos();
+      this.mappingNanos = e.getMappingNanos();
+      this.error = e.getError();
+      this.threadName = Thread.currentThread().getName();
+      this.callerStack = callerStack;
+    }
+
+    /**
+     * @return epoch millis
+     */
+    public long getCapturedAt() {
+      return capturedAt;
+    }
+
+    public QueryType getQueryType() {
+      return queryType;
+    }
+
+    public String getTableName() {
+      return tableName;
+    }
+
+    public String getSql() {
+      return sql;
+    }
+
+    /**
+     * @return redacted if configured
+     */
+    public List<Object> getParameters() {
+      return parameters;
+    }
+
+    public long getRows() {
+      return rows;
+    }
+
+    public long getTotalNanos() {
+      return totalNanos;
+    }
+
+    public long getPrepareNanos() {
+      return prepareNanos;
+    }
+
+    public long getExecuteNanos() {
+      return executeNanos;
+    }
+
+    public long getMappingNanos() {
+      return mappingNanos;
+    }
+
+    public boolean isSuccess() {
+      return error == null;
+    }
+
+    public String getThreadName() {
+      return threadName;
+    }
+
+    /**
+     * caller frames from the nearest, excluding frames of this library
+     */
+    public List<StackTraceElement> getCallerStack() {
+      return callerStack;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder();
+      sb.append(String.format("[%s] %s %s %.3fms (prepare %.3fms execute %.3fms mapping %.3fms) rows: %d %s thread: %s%n",
+              new Timestamp(capturedAt), tableName, queryType, totalNanos / 1e6,
+              prepareNanos / 1e6, executeNanos / 1e6, mappingNanos / 1e6, rows,
+              error != null ? "failed: " + error : "", threadName));
+      sb.append("  ").append(sql).append(System.lineSeparator());
+      sb.append("  parameters: ").append(parameters).append(System.lineSeparator());
+      for (StackTraceElement frame : callerStack) {
+        sb.append("    at ").append(frame).append(System.lineSeparator());
+      }
+      return sb.toString();
+    }
+  }
+
+  /**
+   * classes in this package and subpackages are skipped in caller stacks
+   */
+  private static final String LIBRARY_PACKAGE = "me.zerosquare.simplemodel.";
+
+  private static final URL LIBRARY_LOCATION = locationOf(SlowQueryLog.class);
+
+  /**
+   * class name to whether it is a library class
+   */
+  private static final Map<String, Boolean> libraryClasses = new ConcurrentHashMap<>();
+
+  private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private final Config config;
+
+  private final SlowQuery[] buffer;
+  private int next;
+  private int size;
+
+  /**
+   * the origin of System.nanoTime() is arbitrary, so it starts a window ago instead of 0
+   */
+  private long windowStartedAt = System.nanoTime() - WINDOW_NANOS;
+  private int capturedInWindow;
+
+  private final AtomicLong slowCount = new AtomicLong();
+  private final AtomicLong droppedCount = new AtomicLong();
+
+  public SlowQueryLog() {
+    this(new Config());
+  }
+
+  public SlowQueryLog(Config config) {
+    this.config = config;
+    this.buffer = new SlowQuery[config.capacity];
+  }
+
+  @Override
+  public void onQuery(QueryEvent event) {
+    if (event.getTotalNanos() < config.getThresholdNanos(event.getQueryType())) return;
+
+    slowCount.incrementAndGet();
+    if (!acquire()) {
+      droppedCount.incrementAndGet();
+      return;
+    }
+
+    SlowQuery slowQuery = new SlowQuery(event, redact(event.getParameters()), callerStack());
+    synchronized (this) {
+      buffer[next] = slowQuery;
+      next = (next + 1) % buffer.length;
+      size = Math.min(size + 1, buffer.length);
+    }
+
+    if (config.logCaptured) {
+      Logger.w("slow query - {}", slowQuery);
+    }
+  }
+
+  /**
+   * rate limit by fixed window of a second
+   */
+  private synchronized boolean acquire() {
+    long now = System.nanoTime();
+    if (now - windowStartedAt >= WINDOW_NANOS) {
+      windowStartedAt = now;
+      capturedInWindow = 0;
+    }
+    if (capturedInWindow >= config.maxCapturesPerSecond) {
+      return false;
+    }
+    capturedInWindow++;
+    return true;
+  }
+
+  private List<Object> redact(List<Object> parameters) {
+    if (config.parameterRedactor == null) {
+      return new ArrayList<>(parameters);
+    }
+
+    List<Object> redacted = new ArrayList<>(parameters.size());
+    for (Object p : parameters) {
+      redacted.add(config.parameterRedactor.apply(p));
+    }
+    return redacted;
+  }
+
+  private List<StackTraceElement> callerStack() {
+    List<StackTraceElement> frames = new ArrayList<>();
+    for (StackTraceElement frame : new Throwable().getStackTrace()) {
+      if (frames.size() >= config.maxStackDepth) break;
+      if (isLibraryFrame(frame)) continue;
+      frames.add(frame);
+    }
+    return Collections.unmodifiableList(frames);
+  }
+
+  private static boolean isLibraryFrame(StackTraceElement frame) {
+    if (!frame.getClassName().startsWith(LIBRARY_PACKAGE)) return false;
+
+    return libraryClasses.computeIfAbsent(frame.getClassName(), SlowQueryLog::isLibraryClass);
+  }
+
+  /**
+   * classes of the package from other locations (e.g. tests of this library) are not library classes
+   */
+  private static boolean isLibraryClass(String className) {
+    try {
+      Class<?> clazz = Class.forName(className, false, SlowQueryLog.class.getClassLoader());
+      return Objects.equals(locationOf(clazz), LIBRARY_LOCATION);
+    } catch (ClassNotFoundException | LinkageError e) {
+      return true;
+    }
+  }
+
+  private static URL locationOf(Class<?> clazz) {
+    CodeSource source = clazz.getProtectionDomain().getCodeSource();
+    return source != null ? source.getLocation() : null;
+  }
+
+  /**
+   * @return captured slow queries, from the oldest
+   */
+  public synchronized List<SlowQuery> getEntries() {
+    List<SlowQuery> entries = new ArrayList<>(size);
+    int start = (next - size + buffer.length) % buffer.length;
+    for (int i = 0; i < size; i++) {
+      entries.add(buffer[(start + i) % buffer.length]);
+    }
+    return entries;
+  }
+
+  /**
+   * @return number of queries over thresholds, including dropped ones
+   */
+  public long getSlowCount() {
+    return slowCount.get();
+  }
+
+  /**
+   * @return number of slow queries not captured by rate limit
+   */
+  public long getDroppedCount() {
+    return droppedCount.get();
+  }
+
+  /**
+   * @return captured slow queries as text, from the oldest
+   */
+  public String dump() {
+    List<SlowQuery> entries = getEntries();
+    StringBuilder sb = new StringBuilder();
+    sb.append(String.format("slow queries: %d captured, %d total, %d dropped by rate limit%n",
+            entries.size(), getSlowCount(), getDroppedCount()));
+    for (SlowQuery entry : entries) {
+      sb.append(entry);
+    }
+    return sb.toString();
+  }
+
+  public synchronized void clear() {
+    Arrays.fill(buffer, null);
+    next = 0;
+    size = 0;
+  }
+
+}
@@ -0,0 +1,67 @@
+package me.zerosquare.simplemodel.metrics;
+
+import java.util.regex.Pattern;
+
+/**
+ * Replace literals with `?`, collapse `IN (?, ?, ...)` and whitespaces, so the same queries have the same SQL.
+ */
+class SqlNormalizer {
+
+  private static final Pattern LIST = Pattern.compile("\\(\\s*\\?(\\s*,\\s*\\?)+\\s*\\)");
+  private static final Pattern ROWS = Pattern.compile("\\(\\?\\)(\\s*,\\s*\\(\\?\\))+");
+
+  static String normalize(String sql) {
+    if (sql == null) return null;
+
+    StringBuilder sb = new StringBuilder(sql.length());
+    int n = sql.length();
+    int i = 0;
+
+    while (i < n) {
+      char c = sql.charAt(i);
+
+      if (c == '\'') {
+        // string literal, '' is an escaped quote
+        i++;
+        while (i < n) {
+          if (sql.charAt(i) == '\'') {
+            if (i + 1 < n && sql.charAt(i + 1) == '\'') {
+              i += 2;
+              continue;
+            }
+            break;
+          }
+          i++;
+        }
+        i++;
+        sb.append('?');
+      } else if (Character.isDigit(c) && !isIdentifierPart(sb)) {
+        while (i < n && (Character.isDigit(sql.charAt(i)) || sql.charAt(i) == '.')) i++;
+        sb.append('?');
+      } else if (Character.isWhitespace(c)) {
+        while (i < n && Character.isWhitespace(sql.charAt(i))) i++;
+        if (sb.length() > 0) sb.append(' ');
+      } else {
+        sb.append(c);
+        i++;
+      }
+    }
+
+    return collapseLists(sb.toString().trim());
+  }
+
+  private static boolean isIdentifierPart(StringBuilder sb) {
+    if (sb.length() == 0) return false;
+    char prev = sb.charAt(sb.length() - 1);
+    return Character.isLetterOrDigit(prev) || prev == '_';
+  }
+
+  /**
+   * `(?, ?, ?)` to `(?)`, and rows of multi-row insert `(?), (?)` to `(?)`
+   */
+  private static String collapseLists(String sql) {
+    String collapsed = LIST.matcher(sql).replaceAll("(?)");
+    return ROWS.matcher(collapsed).replaceAll("(?)");
+  }
+
+}
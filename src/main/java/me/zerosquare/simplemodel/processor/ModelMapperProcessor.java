@@ -0,0 +1,283 @@
+package me.zerosquare.simplemodel.processor;
+
+import me.zerosquare.simplemodel.Model;
+import me.zerosquare.simplemodel.ModelMapper;
+import me.zerosquare.simplemodel.annotations.Column;
+import me.zerosquare.simplemodel.annotations.Table;
+import org.apache.commons.lang3.StringUtils;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.*;
+
+/**
+ * Optional annotation processor generating ModelMapper for each model class annotated with Table.
+ * It is discovered by javac from META-INF/services when simplemodel is on the compile classpath,
+ * or enable it by adding `me.zerosquare.simplemodel.processor.ModelMapperProcessor` to annotationProcessors of maven-compiler-plugin.
+ *
+ * Classes which cannot be accessed without reflection (e.g. private fields or constructor) are skipped,
+ * and those classes are mapped by reflection at runtime as before.
+ */
+public class ModelMapperProcessor extends AbstractProcessor {
+
+  private static class ColumnElement {
+    private final String name;
+    private final VariableElement field;
+
+    private ColumnElement(String name, VariableElement field) {
+      this.name = name;
+      this.field = field;
+    }
+  }
+
+  /**
+   * typed methods of ResultSet and PreparedStatement for a field type
+   */
+  private static class TypedAccess {
+    private final String method;
+    private final boolean primitive;
+    private final String sqlType;
+
+    /**
+     * @param method suffix of getXxx/setXxx
+     * @param primitive the getter returns a primitive, so check wasNull
+     */
+    private TypedAccess(String method, boolean primitive, String sqlType) {
+      this.method = method;
+      this.primitive = primitive;
+      this.sqlType = sqlType;
+    }
+  }
+
+  private static final Map<String, TypedAccess> typedAccesses = new HashMap<>();
+
+  static {
+    typedAccesses.put(Long.class.getName(), new TypedAccess("Long", true, "BIGINT"));
+    typedAccesses.put(Integer.class.getName(), new TypedAccess("Int", true, "INTEGER"));
+    typedAccesses.put(Short.class.getName(), new TypedAccess("Short", true, "SMALLINT"));
+    typedAccesses.put(Byte.class.getName(), new TypedAccess("Byte", true, "TINYINT"));
+    typedAccesses.put(Double.class.getName(), new TypedAccess("Double", true, "DOUBLE"));
+    typedAccesses.put(Float.class.getName(), new TypedAccess("Float", true, "REAL"));
+    typedAccesses.put(Boolean.class.getName(), new TypedAccess("Boolean", true, "BOOLEAN"));
+    typedAccesses.put(String.class.getName(), new TypedAccess("String", false, "VARCHAR"));
+    typedAccesses.put(java.math.BigDecimal.class.getName(), new TypedAccess("BigDecimal", false, "DECIMAL"));
+    typedAccesses.put(java.sql.Timestamp.class.getName(), new TypedAccess("Timestamp", false, "TIMESTAMP"));
+    typedAccesses.put(java.sql.Date.class.getName(), new TypedAccess("Date", false, "DATE"));
+  }
+
+  @Override
+  public Set<String> getSupportedAnnotationTypes() {
+    return Collections.singleton(Table.class.getName());
+  }
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+    for (TypeElement type : ElementFilter.typesIn(roundEnv.getElementsAnnotatedWith(Table.class))) {
+      List<ColumnElement> columns = collectColumns(type);
+      if (columns == null) continue;
+
+      try {
+        generate(type, columns);
+      } catch (IOException e) {
+        messager().printMessage(Diagnostic.Kind.ERROR, "cannot generate model mapper - " + e.getMessage(), type);
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return null if mapper cannot be generated for the type
+   */
+  private List<ColumnElement> collectColumns(TypeElement type) {
+    Elements elements = processingEnv.getElementUtils();
+    Types types = processingEnv.getTypeUtils();
+
+    if (!types.isAssignable(type.asType(), elements.getTypeElement(Model.class.getName()).asType())) {
+      return skip(type, "it does not extend Model");
+    }
+    if (type.getModifiers().contains(Modifier.ABSTRACT) || !type.getTypeParameters().isEmpty()) {
+      return skip(type, "it is abstract or generic");
+    }
+    for (Element e = type; e.getKind().isClass(); e = e.getEnclosingElement()) {
+      if (e.getModifiers().contains(Modifier.PRIVATE) ||
+              (e.getEnclosingElement().getKind().isClass() && !e.getModifiers().contains(Modifier.STATIC))) {
+        return skip(type, "it is private or inner class");
+      }
+    }
+    if (!hasAccessibleConstructor(type)) {
+      return skip(type, "it does not have non-private no-arg constructor");
+    }
+
+    PackageElement pkg = elements.getPackageOf(type);
+    List<ColumnElement> columns = new ArrayList<>();
+
+    // same order with runtime metadata: columns of the class first, then columns of super classes
+    for (TypeElement c = type; c != null; c = superclassOf(c)) {
+      for (VariableElement field : ElementFilter.fieldsIn(c.getEnclosedElements())) {
+        Column column = field.getAnnotation(Column.class);
+        if (column == null) continue;
+
+        Set<Modifier> modifiers = field.getModifiers();
+        if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.FINAL)) {
+          return skip(type, String.format("field '%s' is private, static or final", field.getSimpleName()));
+        }
+        if (!modifiers.contains(Modifier.PUBLIC) && !elements.getPackageOf(c).equals(pkg)) {
+          return skip(type, String.format("field '%s' is not accessible from %s", field.getSimpleName(), pkg));
+        }
+        if (field.asType().getKind().isPrimitive()) {
+          return skip(type, String.format("field '%s' should not be primitive", field.getSimpleName()));
+        }
+
+        String name = StringUtils.isBlank(column.name()) ? field.getSimpleName().toString() : column.name();
+        columns.add(new ColumnElement(name.toLowerCase(), field));
+      }
+    }
+
+    return columns;
+  }
+
+  private TypeElement superclassOf(TypeElement type) {
+    TypeMirror superclass = type.getSuperclass();
+    if (superclass.getKind() != TypeKind.DECLARED) return null;
+
+    TypeElement e = (TypeElement) ((DeclaredType) superclass).asElement();
+    return e.getQualifiedName().contentEquals(Object.class.getName()) ? null : e;
+  }
+
+  private boolean hasAccessibleConstructor(TypeElement type) {
+    for (ExecutableElement ctor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+      if (ctor.getParameters().isEmpty() && !ctor.getModifiers().contains(Modifier.PRIVATE)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private List<ColumnElement> skip(TypeElement type, String reason) {
+    messager().printMessage(Diagnostic.Kind.NOTE,
+            String.format("model mapper is not generated for %s because %s", type.getQualifiedName(), reason), type);
+    return null;
+  }
+
+  private void generate(TypeElement type, List<ColumnElement> columns) throws IOException {
+    Elements elements = processingEnv.getElementUtils();
+    Types types = processingEnv.getTypeUtils();
+
+    String pkg = elements.getPackageOf(type).getQualifiedName().toString();
+    String binaryName = elements.getBinaryName(type).toString();
+    String mapperName = (pkg.isEmpty() ? binaryName : binaryName.substring(pkg.length() + 1)).replace('$', '_')
+            + ModelMapper.CLASS_NAME_SUFFIX;
+    String modelName = type.getQualifiedName().toString();
+
+    JavaFileObject file = processingEnv.getFiler().createSourceFile(
+            pkg.isEmpty() ? mapperName : pkg + "." + mapperName, type);
+
+    try (PrintWriter w = new PrintWriter(file.openWriter())) {
+      if (!pkg.isEmpty()) {
+        w.printf("package %s;%n%n", pkg);
+      }
+
+      w.printf("/**%n * Generated by %s. Do not edit.%n */%n", getClass().getName());
+      w.printf("public final class %s implements %s<%s> {%n%n", mapperName, ModelMapper.class.getName(), modelName);
+
+      w.printf("  private static final String[] COLUMN_NAMES = {%s};%n%n",
+              String.join(", ", columns.stream().map(c -> "\"" + c.name + "\"").toArray(String[]::new)));
+
+      w.printf("  @Override%n  public %s newInstance() {%n    return new %s();%n  }%n%n", modelName, modelName);
+
+      w.printf("  @Override%n  public String[] columnNames() {%n    return COLUMN_NAMES.clone();%n  }%n%n");
+
+      w.printf("  @Override%n  public Object get(%s model, int columnIndex) {%n    switch (columnIndex) {%n", modelName);
+      for (int i = 0; i < columns.size(); i++) {
+        w.printf("      case %d: return %s;%n", i, fieldAccess(columns.get(i)));
+      }
+      w.printf("      default: throw new IndexOutOfBoundsException(String.valueOf(columnIndex));%n    }%n  }%n%n");
+
+      w.printf("  @Override%n  public void set(%s model, int columnIndex, Object value) {%n    switch (columnIndex) {%n", modelName);
+      for (int i = 0; i < columns.size(); i++) {
+        ColumnElement c = columns.get(i);
+        w.printf("      case %d: %s = (%s) value; break;%n", i, fieldAccess(c), types.erasure(c.field.asType()));
+      }
+      w.printf("      default: throw new IndexOutOfBoundsException(String.valueOf(columnIndex));%n    }%n  }%n%n");
+
+      w.printf("  @Override%n  public boolean isTyped(int columnIndex) {%n    switch (columnIndex) {%n");
+      for (int i = 0; i < columns.size(); i++) {
+        w.printf("      case %d: return %s;%n", i, typedAccessOf(columns.get(i)) != null);
+      }
+      w.printf("      default: throw new IndexOutOfBoundsException(String.valueOf(columnIndex));%n    }%n  }%n%n");
+
+      w.printf("  @Override%n  public void read(%s model, java.sql.ResultSet rs, int[] columns) throws java.sql.SQLException {%n", modelName);
+      for (int i = 0; i < columns.size(); i++) {
+        ColumnElement c = columns.get(i);
+        TypedAccess access = typedAccessOf(c);
+        if (access == null) continue;
+
+        if (access.primitive) {
+          w.printf("    if (columns[%d] == 0) {%n      %s = null;%n    } else {%n", i, fieldAccess(c));
+          w.printf("      %s v = rs.get%s(columns[%d]);%n", types.unboxedType(c.field.asType()), access.method, i);
+          w.printf("      %s = rs.wasNull() ? null : v;%n    }%n", fieldAccess(c));
+        } else {
+          w.printf("    %s = columns[%d] == 0 ? null : rs.get%s(columns[%d]);%n", fieldAccess(c), i, access.method, i);
+        }
+      }
+      w.printf("  }%n%n");
+
+      w.printf("  @Override%n  public void bind(%s model, int columnIndex, java.sql.PreparedStatement pst, int parameterIndex) throws java.sql.SQLException {%n", modelName);
+      w.printf("    switch (columnIndex) {%n");
+      for (int i = 0; i < columns.size(); i++) {
+        ColumnElement c = columns.get(i);
+        TypedAccess access = typedAccessOf(c);
+        w.printf("      case %d: {%n", i);
+        w.printf("        %s v = %s;%n", types.erasure(c.field.asType()), fieldAccess(c));
+        if (access == null) {
+          w.printf("        pst.setObject(parameterIndex, v);%n");
+        } else {
+          w.printf("        if (v == null) pst.setNull(parameterIndex, java.sql.Types.%s);%n", access.sqlType);
+          w.printf("        else pst.set%s(parameterIndex, v);%n", access.method);
+        }
+        w.printf("        break;%n      }%n");
+      }
+      w.printf("      default: throw new IndexOutOfBoundsException(String.valueOf(columnIndex));%n    }%n  }%n%n");
+
+      w.printf("}%n");
+    }
+  }
+
+  /**
+   * @return null if there is no typed method for the field type
+   */
+  private TypedAccess typedAccessOf(ColumnElement c) {
+    return typedAccesses.get(processingEnv.getTypeUtils().erasure(c.field.asType()).toString());
+  }
+
+  /**
+   * cast to the declaring class so that fields hidden by subclass are accessed correctly
+   */
+  private String fieldAccess(ColumnElement c) {
+    TypeElement declaring = (TypeElement) c.field.getEnclosingElement();
+    return String.format("((%s) model).%s", declaring.getQualifiedName(), c.field.getSimpleName());
+  }
+
+  private Messager messager() {
+    return processingEnv.getMessager();
+  }
+
+}
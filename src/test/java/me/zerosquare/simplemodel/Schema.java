@@ -7,7 +7,7 @@ import java.nio.file.Paths;
 
 public class Schema {
     public static void loadSchema(String filename) throws Exception {
-        Logger.i("current path is: " + Paths.get("").toAbsolutePath().toString());
+        Logger.i("current path is: {}", Paths.get("").toAbsolutePath());
 
         // load schema and create tables
         String schema = new String(Files.readAllBytes(Paths.get(filename)));
@@ -1,17 +1,42 @@
 package me.zerosquare.simplemodel;
 
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import me.zerosquare.simplemodel.annotations.Cached;
 import me.zerosquare.simplemodel.annotations.Column;
 import me.zerosquare.simplemodel.annotations.Table;
 import me.zerosquare.simplemodel.exceptions.AbortedException;
+import me.zerosquare.simplemodel.extensions.SoftDeleteModel;
 import me.zerosquare.simplemodel.internals.Logger;
+import me.zerosquare.simplemodel.metrics.InMemoryQueryMetrics;
+import me.zerosquare.simplemodel.metrics.QueryEvent;
+import me.zerosquare.simplemodel.metrics.QueryListener;
+import me.zerosquare.simplemodel.metrics.SlowQueryLog;
 import me.zerosquare.simplemodel.model.*;
+import me.zerosquare.simplemodel.processor.ModelMapperProcessor;
+import org.h2.jdbcx.JdbcDataSource;
 import org.junit.*;
+import org.slf4j.LoggerFactory;
 
+import javax.annotation.processing.Processor;
+import java.sql.Connection;
 import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
 
 import static org.junit.Assert.*;
 
@@ -78,6 +103,9 @@ public class SimpleModelTest {
     r = Model.table("employees").find(id);
     assertEquals(name, r.getString("name"));
 
+    // only integral ids are found by id, others are compared by the database
+    assertNull(Model.table("employees").findBy("id = ?", id + 0.5));
+
     // delete with find
     assertEquals(1, Model.table("employees").find(id).delete());
 
@@ -97,7 +125,7 @@ public class SimpleModelTest {
     long id = ne.create();
     assertTrue(id >= 1);
 
-    Logger.i("NEW EMPLOYEE ID: %d", id);
+    Logger.i("NEW EMPLOYEE ID: {}", id);
 
     // select
     List<Employee> es = new Employee().where("id = ?", id).fetch();
@@ -173,7 +201,7 @@ public class SimpleModelTest {
     long id = ne.create();
     assertTrue(id >= 1);
 
-    Logger.i("NEW EMPLOYEE ID: %d", id);
+    Logger.i("NEW EMPLOYEE ID: {}", id);
 
     // select
     List<Employee> es = new Employee().where("id = ?", id).fetch();
@@ -219,7 +247,7 @@ public class SimpleModelTest {
     assertEquals(name, p.name);
     assertNotNull(p.deletedAt);
 
-    Logger.i("%s", p.deletedAt.toString());
+    Logger.i("{}", p.deletedAt.toString());
   }
 
   @Test
@@ -333,6 +361,132 @@ public class SimpleModelTest {
     assertEquals(eid1, (long) rs.id);
   }
 
+  @Test
+  public void testIncludes() throws Exception {
+    User u1 = new User("includes user1");
+    u1.create();
+    User u2 = new User("includes user2");
+    u2.create();
+
+    Doc d1 = new Doc(u1.id, "includes doc1", "content");
+    d1.create();
+    Doc d2 = new Doc(u2.id, "includes doc2", "content");
+    d2.create();
+
+    new Comment(u2.id, d1.id, "includes comment1").create();
+    new Comment(u1.id, d1.id, "includes comment2").create();
+    new Comment(u1.id, d2.id, "includes comment3").create();
+
+    AtomicLong queries = new AtomicLong();
+    QueryListener counter = e -> queries.incrementAndGet();
+    Model.addQueryListener(counter);
+    List<Comment> comments;
+    try {
+      comments = new Comment()
+              .where("content like ?", "includes comment%")
+              .order("id")
+              .includes("user", "doc")
+              .fetch();
+    } finally {
+      Model.removeQueryListener(counter);
+    }
+
+    // one query for comments, and one for each association
+    assertEquals(3, queries.get());
+    assertEquals(3, comments.size());
+    assertEquals("includes user2", comments.get(0).user.name);
+    assertEquals("includes doc1", comments.get(0).doc.title);
+    assertEquals("includes user1", comments.get(2).user.name);
+    assertEquals("includes doc2", comments.get(2).doc.title);
+    assertSame(comments.get(1).user, comments.get(2).user);
+
+    // has many
+    Doc doc = new Doc().includes("comments", "user").find(d1.id);
+    assertEquals("includes user1", doc.user.name);
+    assertEquals(2, doc.comments.size());
+    assertEquals("includes comment1", doc.comments.get(0).content);
+    assertEquals("includes comment2", doc.comments.get(1).content);
+
+    Doc d3 = new Doc(u1.id, "includes doc3", "content");
+    d3.create();
+    doc = new Doc().includes("comments").find(d3.id);
+    assertTrue(doc.comments.isEmpty());
+
+    try {
+      new Doc().includes("nothing").find(d1.id);
+      fail();
+    } catch (IllegalArgumentException ignored) {
+    }
+  }
+
+  @Test
+  public void testFindAll() throws Exception {
+    Company c = new Company();
+    c.name = "findall company";
+    long cid = c.create();
+
+    List<Employee> employees = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      Employee e = new Employee();
+      e.name = "findall" + i;
+      e.age = i;
+      e.companyId = i < 3 ? cid : null;
+      employees.add(e);
+    }
+    Model.createAll(employees);
+
+    List<Long> ids = new ArrayList<>();
+    ids.add(employees.get(2).id);
+    ids.add(-1L);
+    ids.add(employees.get(0).id);
+    ids.add(employees.get(2).id);
+    ids.add(employees.get(4).id);
+
+    // in the order of ids, null if not found
+    List<Employee> found = new Employee().findAll(ids);
+    assertEquals(5, found.size());
+    assertEquals("findall2", found.get(0).name);
+    assertNull(found.get(1));
+    assertEquals("findall0", found.get(2).name);
+    assertEquals("findall2", found.get(3).name);
+    assertEquals("findall4", found.get(4).name);
+
+    // 2 ids per query, duplicated ids are found once
+    Map<Long, Employee> map = new Employee().findMap(ids, 2);
+    assertEquals(3, map.size());
+    assertEquals(Arrays.asList(ids.get(0), ids.get(2), ids.get(4)), new ArrayList<>(map.keySet()));
+
+    // with joins and where
+    found = new Employee()
+            .joins("join companies on companies.id = employees.company_id")
+            .where("companies.name = ?", "findall company")
+            .findAll(ids);
+    assertEquals("findall2", found.get(0).name);
+    assertEquals("findall0", found.get(2).name);
+    assertNull(found.get(4));
+
+    // soft deleted rows are excluded
+    List<Product> products = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      Product p = new Product();
+      p.name = "findall";
+      p.price = i;
+      products.add(p);
+    }
+    Model.bulkCreate(products);
+    products.get(1).delete();
+
+    List<Long> productIds = new ArrayList<>();
+    for (Product p : products) {
+      productIds.add(p.id);
+    }
+    List<Product> foundProducts = new Product().findAll(productIds);
+    assertNotNull(foundProducts.get(0));
+    assertNull(foundProducts.get(1));
+    assertNotNull(foundProducts.get(2));
+    assertEquals(3, new Product().includeDeleted().findMap(productIds).size());
+  }
+
   /**
    * double age when save
    * abort when age is zero
@@ -429,6 +583,293 @@ public class SimpleModelTest {
     me.create();
   }
 
+  @Test
+  public void testCreateAll() throws Exception {
+    List<Model> models = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      MyEmployee e = new MyEmployee();
+      e.name = "batch" + i;
+      e.age = i + 1;
+      // different column set
+      if (i % 2 == 0) {
+        e.companyId = 1L;
+      }
+      models.add(e);
+    }
+    models.add(Model.table("companies").put("name", "batch company"));
+
+    long[] ids = Model.createAll(models, 2);
+
+    assertEquals(6, ids.length);
+    for (int i = 0; i < 5; i++) {
+      MyEmployee me = (MyEmployee) models.get(i);
+      assertTrue(ids[i] >= 1);
+      assertEquals(ids[i], (long) me.id);
+
+      // before hook doubled the age
+      Employee e = new Employee().find(ids[i]);
+      assertEquals("batch" + i, e.name);
+      assertEquals((i + 1) * 2, (int) e.age);
+    }
+
+    assertEquals(ids[5], (long) models.get(5).getId());
+    Company c = new Company().find(ids[5]);
+    assertEquals("batch company", c.name);
+  }
+
+  @Test
+  public void testBulkCreate() throws Exception {
+    List<User> users = new ArrayList<>();
+    for (int i = 0; i < 7; i++) {
+      users.add(new User("bulk" + i));
+    }
+
+    // 3 rows per statement
+    long[] ids = Model.bulkCreate(users, 3);
+
+    assertEquals(7, ids.length);
+    for (int i = 0; i < 7; i++) {
+      assertTrue(ids[i] >= 1);
+      assertEquals(ids[i], (long) users.get(i).id);
+      if (i > 0) {
+        assertEquals(ids[i - 1] + 1, ids[i]);
+      }
+
+      User u = new User().find(ids[i]);
+      assertEquals("bulk" + i, u.name);
+    }
+  }
+
+  @Test
+  public void testUpdateAllAndDeleteAll() throws Exception {
+    List<MyEmployee> employees = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      MyEmployee e = new MyEmployee();
+      e.name = "bulkupdate" + i;
+      e.age = i + 1;
+      employees.add(e);
+    }
+    Model.createAll(employees);
+
+    for (int i = 0; i < 5; i++) {
+      MyEmployee e = employees.get(i);
+      e.name = "updated" + i;
+      // different column set
+      if (i % 2 == 0) {
+        e.companyId = 1L;
+      }
+    }
+
+    // 2 rows per batch
+    assertEquals(5, Model.updateAll(employees, true, 2));
+    for (int i = 0; i < 5; i++) {
+      // before hook doubled the age again
+      Employee e = new Employee().find(employees.get(i).id);
+      assertEquals("updated" + i, e.name);
+      assertEquals((i + 1) * 4, (int) e.age);
+    }
+
+    // 2 ids per statement
+    assertEquals(3, Model.deleteAll(employees.subList(0, 3), 2));
+    for (int i = 0; i < 3; i++) {
+      assertNull(new Employee().find(employees.get(i).id));
+    }
+
+    List<Long> ids = new ArrayList<>();
+    ids.add(employees.get(3).id);
+    ids.add(employees.get(4).id);
+
+    assertEquals(2, new Employee().updateColumnByIds(ids, "age", 77));
+    Employee updated = new Employee().find(ids.get(0));
+    assertEquals(77, (int) updated.age);
+
+    // where clause is applied too
+    assertEquals(0, new Employee().where("name = ?", "none").deleteByIds(ids));
+    assertEquals(2, new Employee().deleteByIds(ids, 1));
+    assertNull(new Employee().find(ids.get(1)));
+
+    // soft delete in bulk
+    List<Product> products = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      Product p = new Product();
+      p.name = "bulkdelete";
+      p.price = i;
+      products.add(p);
+    }
+    Model.bulkCreate(products);
+
+    assertEquals(3, Model.deleteAll(products));
+    assertEquals(0, new Product().where("name = ?", "bulkdelete").fetch().size());
+    assertEquals(3, new Product().includeDeleted().where("name = ?", "bulkdelete").fetch().size());
+
+    // hooks are not invoked for soft delete, as delete()
+    HookedProduct hooked = new HookedProduct();
+    hooked.name = "bulkdelete";
+    hooked.price = 0;
+    hooked.disableHooks().create();
+    hooked.setEnableBeforeHook(true);
+    hooked.setEnableAfterHook(true);
+    assertEquals(1, Model.deleteAll(Collections.singletonList(hooked)));
+    assertNull(new Product().find(hooked.id));
+  }
+
+  @Test
+  public void testDeleteAllHooksAndIds() throws Exception {
+    List<MyEmployee> employees = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      MyEmployee e = new MyEmployee();
+      e.name = "bulkhooks" + i;
+      e.age = i + 1;
+      employees.add(e);
+    }
+    Model.createAll(employees);
+
+    // before hooks run chunk by chunk - the first chunk is deleted before the third model aborts
+    employees.get(2).age = 0;
+    try {
+      Model.deleteAll(employees, 2);
+      fail();
+    } catch (AbortedException ignored) {
+    }
+    assertNull(new Employee().find(employees.get(1).id));
+    assertNotNull(new Employee().find(employees.get(2).id));
+    assertNotNull(new Employee().find(employees.get(3).id));
+
+    // a model without id fails before any statement
+    MyEmployee unsaved = new MyEmployee();
+    unsaved.name = "bulkhooks";
+    unsaved.age = 1;
+    List<MyEmployee> withUnsaved = Arrays.asList(employees.get(3), unsaved);
+    try {
+      Model.deleteAll(withUnsaved);
+      fail();
+    } catch (IllegalArgumentException ignored) {
+    }
+    try {
+      Model.updateAll(withUnsaved);
+      fail();
+    } catch (IllegalArgumentException ignored) {
+    }
+    Employee notUpdated = new Employee().find(employees.get(3).id);
+    // doubled by the before hook of create only
+    assertEquals(8, (int) notUpdated.age);
+
+    // statements by ids are on this table only
+    try {
+      new Employee().joins("join companies on companies.id = employees.company_id")
+              .deleteByIds(Collections.singletonList(employees.get(3).id));
+      fail();
+    } catch (IllegalArgumentException ignored) {
+    }
+    assertEquals(1, new Employee().where("employees.name = ?", "bulkhooks3")
+            .deleteByIds(Collections.singletonList(employees.get(3).id)));
+  }
+
+  @Table(name = "products")
+  public static class HookedProduct extends SoftDeleteModel {
+    @Column
+    public Long id;
+
+    @Column
+    public String name;
+
+    @Column
+    public Integer price;
+
+    @Override
+    protected void beforeExecute(QueryType type) throws AbortedException {
+      throw new AbortedException();
+    }
+
+    @Override
+    protected void afterExecute(QueryType type, boolean success) throws AbortedException {
+      throw new AbortedException();
+    }
+  }
+
+  @Test
+  public void testCursor() throws Exception {
+    for (int i = 0; i < 5; i++) {
+      new User("cursor" + i).create();
+    }
+
+    Connector.enableConnectionPool(new ConnectionPool.Config().maxSize(1));
+    try {
+      try (ModelCursor<User> cursor = new User().order("id").fetchSize(2).cursor()) {
+        for (int i = 0; i < 5; i++) {
+          assertTrue(cursor.hasNext());
+          assertEquals("cursor" + i, cursor.next().name);
+        }
+        assertFalse(cursor.hasNext());
+        // released at the end
+        assertTrue(cursor.isClosed());
+        assertEquals(0, Connector.getConnectionPoolStats().getActive());
+      }
+
+      // stream closed before the end
+      try (Stream<User> stream = new User().order("id").stream()) {
+        assertEquals("cursor0", stream.findFirst().get().name);
+        assertEquals(1, Connector.getConnectionPoolStats().getActive());
+      }
+      assertEquals(0, Connector.getConnectionPoolStats().getActive());
+
+      AtomicLong count = new AtomicLong();
+      new User().where("name like ?", "cursor%").forEach(u -> count.incrementAndGet());
+      assertEquals(5, count.get());
+    } finally {
+      Connector.disableConnectionPool();
+    }
+  }
+
+  @Test
+  public void testSoftDeleteCursor() throws Exception {
+    Product p = new Product();
+    p.name = makeName();
+    p.price = 1;
+    p.id = p.create();
+    p.delete();
+
+    try (Stream<Product> stream = new Product().where("name = ?", p.name).stream()) {
+      assertEquals(0, stream.count());
+    }
+    try (Stream<Product> stream = new Product().includeDeleted().where("name = ?", p.name).stream()) {
+      assertEquals(1, stream.count());
+    }
+  }
+
+  @Test
+  public void testScan() throws Exception {
+    Company c = new Company();
+    c.name = "scan company";
+    long cid = c.create();
+
+    for (int i = 1; i <= 4; i++) {
+      Employee e = new Employee();
+      e.name = "scan" + i;
+      e.age = i * 10;
+      e.companyId = cid;
+      e.create();
+    }
+
+    AtomicLong sum = new AtomicLong();
+    List<String> names = new ArrayList<>();
+
+    long rows = Model.table("employees")
+            .joins("companies on companies.id = employees.company_id")
+            .where("companies.id = ?", cid)
+            .order("employees.id")
+            .scan(row -> {
+              int age = row.indexOf("age");
+              sum.addAndGet(row.getLong(age));
+              names.add(row.getString(row.indexOf("name")) + "@" + row.getString(row.indexOf("companies.name")));
+            });
+
+    assertEquals(4, rows);
+    assertEquals(100, sum.get());
+    assertEquals("scan1@scan company", names.get(0));
+    assertEquals("scan4@scan company", names.get(3));
+  }
+
   @Test
   public void testManualQuery() throws Exception {
     String result = Model.execute("select 'hello simplemodel'", pst -> {
@@ -451,7 +892,7 @@ public class SimpleModelTest {
     long id = ne.create();
     assertTrue(id >= 1);
 
-    Logger.i("NEW EMPLOYEE ID: %d", id);
+    Logger.i("NEW EMPLOYEE ID: {}", id);
 
     // find
     DummyEmployee e = new DummyEmployee().find(id);
@@ -505,6 +946,227 @@ public class SimpleModelTest {
     assertEquals(5, (int) e.age);
   }
 
+  @Test
+  public void testGeneratedModelMapper() throws Exception {
+    // generated at test compile time
+    assertNotNull(ModelMetadata.of(Employee.class).getMapper());
+    assertNotNull(ModelMetadata.of(MyEmployee.class).getMapper());
+
+    // no Table annotation on itself, mapped by accessors
+    assertNull(ModelMetadata.of(DummyEmployee.class).getMapper());
+
+    Employee ne = new Employee();
+    ne.name = makeName();
+    ne.age = 7;
+    long id = ne.create();
+
+    Employee e = new Employee().find(id);
+    assertEquals(ne.name, e.name);
+    assertEquals(7, (int) e.age);
+    assertEquals(id, (long) e.id);
+
+    // fields are read and bound by typed methods
+    ModelMapper<Model> mapper = ModelMetadata.of(Employee.class).getMapper();
+    for (int i = 0; i < mapper.columnNames().length; i++) {
+      assertTrue(mapper.isTyped(i));
+    }
+
+    // columns not selected are null, aliases are read too
+    e = new Employee().select("id, name as age_name, name").where("id = ?", id).fetchFirst();
+    assertEquals(ne.name, e.name);
+    assertNull(e.age);
+    assertEquals(ne.name, e.get("age_name"));
+
+    e = new Employee().find(id);
+    e.age = 8;
+    e.companyId = null;
+    assertEquals(1, e.update());
+    e = new Employee().find(id);
+    assertEquals(8, (int) e.age);
+    assertNull(e.companyId);
+
+    // discovered by javac from the service entry
+    boolean discovered = false;
+    for (Processor processor : ServiceLoader.load(Processor.class)) {
+      discovered |= processor instanceof ModelMapperProcessor;
+    }
+    assertTrue(discovered);
+  }
+
+  @Test
+  public void testCompactStorage() throws Exception {
+    Employee ne = new Employee();
+    ne.name = "compact";
+    ne.age = 1;
+    ne.companyId = 1L;
+    long id = ne.create();
+
+    List<Employee> es = new Employee().select("*, name as n").where("id = ?", id).compactStorage(true).fetch();
+    Employee e = es.get(0);
+    assertTrue(e.getColumnValues() instanceof SlotMap);
+    assertEquals("compact", e.name);
+    assertEquals("compact", e.get("n"));
+    assertEquals(1, e.getInt("age"));
+
+    // put column not in the schema
+    e.put("extra", 1);
+    assertEquals(1, e.get("extra"));
+
+    // modified columns only
+    e.age = 2;
+    e.companyId = 1L;
+    e.update(true);
+
+    ModelData data = ((Model) e).data;
+    Map<String, Object> modified = data.getModifiedColumnValues();
+    assertTrue(modified.isEmpty());
+
+    e.companyId = 3L;
+    data.columnValuesFromAnnotation(e);
+    modified = data.getModifiedColumnValues();
+    assertEquals(1, modified.size());
+    assertEquals(3L, modified.get("company_id"));
+
+    e = new Employee().find(id);
+    assertEquals(2, (int) e.age);
+    assertEquals(1L, (long) e.companyId);
+  }
+
+  @Test
+  public void testPrimitiveColumnValues() throws Exception {
+    Employee ne = new Employee();
+    ne.name = "primitive";
+    ne.age = 7;
+    long id = ne.create();
+
+    for (boolean compact : new boolean[]{false, true}) {
+      Employee e = new Employee().select("*, age as a, 3000000000 as big, true as flag")
+              .where("id = ?", id).compactStorage(compact).fetchFirst();
+
+      // int from BIGINT column in range, long from INT column
+      assertEquals((int) id, e.getInt("id"));
+      assertEquals(7L, e.getLong("age"));
+      assertEquals(7, e.getInt("a"));
+      assertEquals(7.0, e.getDouble("age"), 0.0);
+
+      // BIGINT out of int range is not truncated
+      assertEquals(3000000000L, e.getLong("big"));
+      try {
+        e.getInt("big");
+        fail();
+      } catch (ArithmeticException ignored) {
+      }
+
+      // boolean is not a number in both storages
+      assertEquals(true, e.get("flag"));
+      try {
+        e.getLong("flag");
+        fail();
+      } catch (ClassCastException ignored) {
+      }
+      try {
+        e.getDouble("flag");
+        fail();
+      } catch (ClassCastException ignored) {
+      }
+
+      // SQL NULL is null, not 0
+      assertNull(e.companyId);
+      assertNull(e.get("company_id"));
+      try {
+        e.getLong("company_id");
+        fail();
+      } catch (NullPointerException ignored) {
+      }
+    }
+
+    // null column is not written back as 0
+    Employee e = new Employee().where("id = ?", id).compactStorage(true).fetchFirst();
+    e.age = 8;
+    e.update(true);
+
+    e = new Employee().find(id);
+    assertEquals(8, (int) e.age);
+    assertNull(e.companyId);
+  }
+
+  @Test
+  public void testColumnLayoutSchemaChange() throws Exception {
+    Model.execute("CREATE TABLE layout_changes (id BIGINT AUTO_INCREMENT PRIMARY KEY, v INT)", pst -> pst.execute());
+    try {
+      Model.table("layout_changes").put("v", 1).create();
+      for (boolean compact : new boolean[]{false, true}) {
+        assertEquals(1, Model.table("layout_changes").compactStorage(compact).fetchFirst().get("v"));
+      }
+
+      // same column count, another type
+      Model.execute("ALTER TABLE layout_changes ALTER COLUMN v VARCHAR(16)", pst -> pst.execute());
+      Model.table("layout_changes").where("1=1").updateColumn("v", "text");
+      for (boolean compact : new boolean[]{false, true}) {
+        assertEquals("text", Model.table("layout_changes").compactStorage(compact).fetchFirst().get("v"));
+      }
+    } finally {
+      Model.execute("DROP TABLE layout_changes", pst -> pst.execute());
+    }
+  }
+
+  @Test
+  public void testFetchColumns() throws Exception {
+    for (int i = 1; i <= 100; i++) {
+      Employee e = new Employee();
+      e.name = "columnar" + (i % 3);
+      e.age = i;
+      e.companyId = i % 2 == 0 ? 1L : null;
+      e.create();
+    }
+
+    ColumnarResult r = new Employee().select("name, age, company_id, age * 1.5 as score").where("name like ?", "columnar%")
+            .order("id").fetchColumns();
+    assertEquals(100, r.size());
+    assertEquals(4, r.getColumnCount());
+
+    int age = r.indexOf("age");
+    int companyId = r.indexOf("company_id");
+    assertEquals(ColumnarResult.ColumnType.LONG, r.getType(age));
+    assertEquals(1, r.getLong(age, 0));
+    assertEquals(100, r.getLongs(age).length);
+    assertTrue(r.isNull(companyId, 0));
+    assertNull(r.getObject(companyId, 0));
+    assertEquals(1L, r.getObject(companyId, 1));
+
+    assertEquals(5050, r.sumLong("age"));
+    assertEquals(5050 * 1.5, r.sum("score"), 0.001);
+    assertEquals(1.0, r.min("age"), 0.0);
+    assertEquals(100.0, r.max("age"), 0.0);
+    assertEquals(50, r.count("company_id"));
+    assertEquals(50, r.sumLong("company_id"));
+
+    Map<Object, int[]> groups = r.groupBy("company_id");
+    assertEquals(2, groups.size());
+    assertEquals(50, groups.get(null).length);
+    assertEquals(1, groups.get(1L)[0]);
+
+    Map<Object, Integer> counts = r.countBy("name");
+    assertEquals(34, (int) counts.get("columnar1"));
+    assertEquals(33, (int) counts.get("columnar0"));
+
+    Map<Object, Double> sums = r.sumBy("company_id", "age");
+    assertEquals(2550.0, sums.get(1L), 0.0);
+    assertEquals(2500.0, sums.get(null), 0.0);
+
+    try {
+      r.sum("name");
+      fail();
+    } catch (IllegalStateException ignored) {
+    }
+
+    // duplicated column without alias keeps its name
+    ColumnarResult dup = new Employee().select("id, name, id").where("name like ?", "columnar%").fetchColumns();
+    assertEquals(Arrays.asList("id", "name", "id"), dup.getColumnNames());
+    assertEquals(0, dup.indexOf("id"));
+    assertEquals(dup.getLong(0, 0), dup.getLong(2, 0));
+  }
+
   @Test
   public void testGetModifiedColumnValues() {
     ModelData data = new ModelData();
@@ -551,6 +1213,216 @@ public class SimpleModelTest {
     assertEquals(100, (int) e.age);
   }
 
+  @Test
+  public void testIdentityMap() throws Exception {
+    Employee e = new Employee();
+    e.name = "identity";
+    e.age = 20;
+    long id = e.create();
+
+    Product p = new Product();
+    p.name = "identity";
+    p.price = 10;
+    long pid = p.create();
+
+    AtomicLong selects = new AtomicLong();
+    QueryListener counter = event -> {
+      if (event.getQueryType() == Model.QueryType.SELECT) selects.incrementAndGet();
+    };
+    Model.addQueryListener(counter);
+
+    try {
+      Transaction.executeWithIdentityMap(() -> {
+        Employee e1 = new Employee().find(id);
+        assertSame(e1, new Employee().find(id));
+        assertSame(e1, new Employee().findBy("id = ?", id));
+        assertSame(e1, new Employee().findBy("employees.id = ?", id));
+        assertEquals(1, selects.get());
+
+        // queries with where are not cached
+        Employee filtered = new Employee().where("age = ?", 20).find(id);
+        assertNotSame(e1, filtered);
+        assertEquals(2, selects.get());
+
+        // update evicts the row
+        e1.age = 21;
+        e1.update();
+        Employee e2 = new Employee().find(id);
+        assertNotSame(e1, e2);
+        assertEquals(21, (int) e2.age);
+        assertEquals(3, selects.get());
+
+        // delete by other where evicts the table
+        new Employee().where("name = ?", "identity").delete();
+        assertNull(new Employee().find(id));
+
+        // soft deleted rows
+        Product p1 = new Product().find(pid);
+        p1.delete();
+        assertNull(new Product().find(pid));
+        assertNotNull(new Product().includeDeleted().find(pid));
+        assertNull(new Product().find(pid));
+      });
+
+      // not used by default
+      Employee other = new Employee();
+      other.name = "identity other";
+      other.age = 30;
+      long otherId = other.create();
+
+      selects.set(0);
+      Transaction.execute(() -> {
+        assertNotSame(new Employee().find(otherId), new Employee().find(otherId));
+      });
+      assertEquals(2, selects.get());
+    } finally {
+      Model.removeQueryListener(counter);
+    }
+  }
+
+  @Table(name = "companies")
+  @Cached(maxSize = 2, ttlSeconds = 1)
+  public static class CachedCompany extends Model {
+    @Column
+    public Long id;
+
+    @Column
+    public String name;
+  }
+
+  @Test
+  public void testModelCache() throws Exception {
+    assertNull(ModelCache.of(Company.class));
+    ModelCache cache = ModelCache.of(CachedCompany.class);
+    assertNotNull(cache);
+
+    AtomicLong now = new AtomicLong(System.nanoTime());
+    cache.setNanoTime(now::get);
+
+    long[] ids = new long[3];
+    for (int i = 0; i < 3; i++) {
+      CachedCompany c = new CachedCompany();
+      c.name = "cached" + i;
+      ids[i] = c.create();
+    }
+
+    AtomicLong selects = new AtomicLong();
+    QueryListener counter = event -> {
+      if (event.getQueryType() == Model.QueryType.SELECT) selects.incrementAndGet();
+    };
+    Model.addQueryListener(counter);
+
+    try {
+      CachedCompany c1 = new CachedCompany().find(ids[0]);
+      CachedCompany c2 = new CachedCompany().find(ids[0]);
+      CachedCompany c3 = new CachedCompany().findBy("id = ?", ids[0]);
+      assertEquals(1, selects.get());
+
+      // a new model for each find
+      assertNotSame(c1, c2);
+      assertEquals("cached0", c2.name);
+      assertEquals("cached0", c3.name);
+
+      // update by this process invalidates the row
+      c2.name = "cached updated";
+      c2.update();
+      CachedCompany updated = new CachedCompany().find(ids[0]);
+      assertEquals("cached updated", updated.name);
+      assertEquals(2, selects.get());
+
+      // other models of the table too
+      Model.table("companies").where("id = ?", ids[0]).updateColumn("name", "updated by table");
+      updated = new CachedCompany().find(ids[0]);
+      assertEquals("updated by table", updated.name);
+      assertEquals(3, selects.get());
+
+      // the least recently used row is evicted, twice
+      new CachedCompany().find(ids[1]);
+      new CachedCompany().find(ids[2]);
+      new CachedCompany().find(ids[0]);
+      assertEquals(6, selects.get());
+
+      // not used in transactions
+      Transaction.execute(() -> new CachedCompany().find(ids[0]));
+      assertEquals(7, selects.get());
+
+      // expired
+      now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+      new CachedCompany().find(ids[0]);
+      assertEquals(8, selects.get());
+
+      ModelCache.Stats stats = cache.getStats();
+      assertEquals(2, stats.getHitCount());
+      assertEquals(2, stats.getEvictionCount());
+      assertEquals(1, stats.getExpirationCount());
+      assertEquals(2, stats.getInvalidationCount());
+    } finally {
+      Model.removeQueryListener(counter);
+      cache.setNanoTime(System::nanoTime);
+      cache.invalidateAll();
+    }
+  }
+
+  @Table(name = "users")
+  @Cached(maxSize = 10)
+  public static class CachedUser extends Model {
+    @Column
+    public Long id;
+
+    @Column
+    public String name;
+  }
+
+  @Test
+  public void testModelCacheConcurrentUpdate() throws Exception {
+    CachedUser u = new CachedUser();
+    u.name = "before";
+    long id = u.create();
+
+    // a find of another thread reads the old row after the eviction of the update, and caches it before the write
+    Thread writer = Thread.currentThread();
+    AtomicBoolean armed = new AtomicBoolean();
+    AtomicReference<String> read = new AtomicReference<>();
+    JdbcDataSource ds = new JdbcDataSource() {
+      @Override
+      public Connection getConnection() throws SQLException {
+        if (Thread.currentThread() == writer && armed.getAndSet(false)) {
+          Thread reader = new Thread(() -> {
+            try {
+              read.set(new CachedUser().<CachedUser>find(id).name);
+            } catch (Exception e) {
+              throw new RuntimeException(e);
+            }
+          });
+          reader.start();
+          try {
+            reader.join();
+          } catch (InterruptedException e) {
+            throw new SQLException(e);
+          }
+        }
+        return super.getConnection();
+      }
+    };
+    ds.setURL("jdbc:h2:mem:test;DB_CLOSE_DELAY=-1");
+    ds.setUser("sa");
+    ds.setPassword("sa");
+
+    Connector.setDataSource(ds);
+    try {
+      CachedUser w = new CachedUser().find(id);
+      w.name = "after";
+      armed.set(true);
+      assertEquals(1, w.update());
+      assertEquals("before", read.get());
+
+      // the row cached by the reader is invalidated after the write
+      assertEquals("after", new CachedUser().<CachedUser>find(id).name);
+    } finally {
+      Connector.setDataSource(null);
+    }
+  }
+
   @Test
   public void testTransactionRollback() throws Exception {
     AtomicLong cid = new AtomicLong();
@@ -646,6 +1518,574 @@ public class SimpleModelTest {
     assertEquals(null, ds.props);
   }
 
+  @Test
+  public void testConnectionPool() throws Exception {
+    Connector.enableConnectionPool(new ConnectionPool.Config().minSize(1).maxSize(2));
+    try {
+      Employee ne = new Employee();
+      ne.name = makeName();
+      ne.age = 1;
+      long id = ne.create();
+
+      Employee fe = new Employee().find(id);
+      assertEquals(ne.name, fe.name);
+
+      Transaction.execute(() -> {
+        Employee e = new Employee().find(id);
+        e.age = 2;
+        e.update();
+      });
+
+      fe = new Employee().find(id);
+      assertEquals(2, (int) fe.age);
+
+      ConnectionPool.Stats stats = Connector.getConnectionPoolStats();
+      assertEquals(0, stats.getActive());
+      assertEquals(1, stats.getCreatedCount());
+      assertEquals(4, stats.getBorrowedCount());
+    } finally {
+      Connector.disableConnectionPool();
+    }
+
+    assertNull(Connector.getConnectionPoolStats());
+  }
+
+  @Test
+  public void testConnectionPoolBorrowTimeout() throws Exception {
+    ConnectionPool pool = new ConnectionPool(new ConnectionPool.Config().maxSize(1).borrowTimeoutMillis(50),
+            Connector::makeDBConnection);
+    try {
+      Connection c = pool.borrow();
+
+      try {
+        pool.borrow();
+        fail();
+      } catch (SQLTimeoutException ex) {
+        assertNotNull(ex);
+      }
+
+      // returned connection is reused
+      pool.release(c);
+      assertSame(c, pool.borrow());
+      pool.release(c);
+
+      // closed connection is discarded when returned
+      c = pool.borrow();
+      c.close();
+      pool.release(c);
+
+      ConnectionPool.Stats stats = pool.stats();
+      assertEquals(0, stats.getTotal());
+      assertEquals(1, stats.getTimeoutCount());
+      assertEquals(1, stats.getDestroyedCount());
+    } finally {
+      pool.close();
+    }
+  }
+
+  @Test
+  public void testStatementCache() throws Exception {
+    Connector.enableConnectionPool(new ConnectionPool.Config().maxSize(1).statementCacheSize(2));
+    try {
+      User u = new User("cached");
+      u.id = u.create();
+
+      // same sql is prepared only once
+      for (int i = 0; i < 3; i++) {
+        User r = new User().where("name = ?", "cached").fetchFirst();
+        assertEquals(u.id, r.id);
+      }
+
+      ConnectionPool.Stats stats = Connector.getConnectionPoolStats();
+      assertEquals(2, stats.getStatementCacheMissCount());
+      assertEquals(2, stats.getStatementCacheHitCount());
+      assertEquals(0, stats.getStatementCacheEvictionCount());
+
+      // also cached in transaction
+      Transaction.execute(() -> {
+        User r = new User().where("name = ?", "cached").fetchFirst();
+        assertEquals(u.id, r.id);
+        assertEquals(1, new User().where("id = ?", u.id).delete());
+      });
+
+      stats = Connector.getConnectionPoolStats();
+      assertEquals(3, stats.getStatementCacheHitCount());
+      assertEquals(1, stats.getStatementCacheEvictionCount());
+
+      // result sets left open are closed when the statement is returned to the cache
+      ResultSet open = Model.execute("SELECT id FROM users", pst -> pst.executeQuery());
+      assertTrue(open.isClosed());
+
+      // ids are bound, so find and update of different rows share statements
+      User a = new User("a");
+      a.id = a.create();
+      User b = new User("b");
+      b.id = b.create();
+
+      stats = Connector.getConnectionPoolStats();
+      long hits = stats.getStatementCacheHitCount();
+      long misses = stats.getStatementCacheMissCount();
+
+      a = new User().find(a.id);
+      b = new User().find(b.id);
+      a.name = "a2";
+      a.update();
+      b.name = "b2";
+      b.update();
+
+      stats = Connector.getConnectionPoolStats();
+      assertEquals(hits + 2, stats.getStatementCacheHitCount());
+      assertEquals(misses + 2, stats.getStatementCacheMissCount());
+      assertEquals("b2", new User().<User>find(b.id).name);
+    } finally {
+      Connector.disableConnectionPool();
+    }
+  }
+
+  @Test
+  public void testDataSource() throws Exception {
+    JdbcDataSource ds = new JdbcDataSource();
+    ds.setURL("jdbc:h2:mem:test;DB_CLOSE_DELAY=-1");
+    ds.setUser("sa");
+    ds.setPassword("sa");
+
+    Connector.setDataSource(ds);
+    try {
+      User u = new User("ds");
+      u.id = u.create();
+
+      Transaction.execute(() -> {
+        User r = new User().find(u.id);
+        r.name = "ds2";
+        r.update();
+      });
+
+      User r = new User().find(u.id);
+      assertEquals("ds2", r.name);
+    } finally {
+      Connector.setDataSource(null);
+    }
+  }
+
+  @Test
+  public void testSqlLogSettings() throws Exception {
+    ch.qos.logback.classic.Logger logger = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger("simplemodel");
+    ListAppender<ILoggingEvent> appender = new ListAppender<>();
+    appender.start();
+    logger.addAppender(appender);
+    try {
+      User u = new User("sqllog");
+      u.id = u.create();
+      appender.list.clear();
+
+      // all at rate 1.0, in the level
+      Connector.setSqlLogLevel(org.slf4j.event.Level.TRACE);
+      new User().find(u.id);
+      List<ILoggingEvent> logged = sqlLogEvents(appender);
+      assertEquals(1, logged.size());
+      assertEquals(ch.qos.logback.classic.Level.TRACE, logged.get(0).getLevel());
+      assertTrue(logged.get(0).getFormattedMessage().contains("SELECT"));
+
+      Connector.setSqlLogLevel(org.slf4j.event.Level.DEBUG);
+      new User().find(u.id);
+      logged = sqlLogEvents(appender);
+      assertEquals(2, logged.size());
+      assertEquals(ch.qos.logback.classic.Level.DEBUG, logged.get(1).getLevel());
+
+      // none at rate 0.0
+      Connector.setSqlLogSampleRate(0.0);
+      assertEquals("sqllog", new User().<User>find(u.id).name);
+      assertEquals(2, sqlLogEvents(appender).size());
+
+      // none if the level is disabled
+      Connector.setSqlLogSampleRate(1.0);
+      logger.setLevel(ch.qos.logback.classic.Level.INFO);
+      new User().find(u.id);
+      assertEquals(2, sqlLogEvents(appender).size());
+
+      try {
+        Connector.setSqlLogSampleRate(1.5);
+        fail();
+      } catch (IllegalArgumentException ignored) {
+      }
+    } finally {
+      logger.setLevel(ch.qos.logback.classic.Level.TRACE);
+      logger.detachAppender(appender);
+      Connector.setSqlLogLevel(org.slf4j.event.Level.INFO);
+      Connector.setSqlLogSampleRate(1.0);
+    }
+  }
+
+  private static List<ILoggingEvent> sqlLogEvents(ListAppender<ILoggingEvent> appender) {
+    List<ILoggingEvent> events = new ArrayList<>();
+    for (ILoggingEvent event : appender.list) {
+      if (event.getMessage().startsWith("prepareStatement:")) {
+        events.add(event);
+      }
+    }
+    return events;
+  }
+
+  @Test
+  public void testQueryMetrics() throws Exception {
+    InMemoryQueryMetrics metrics = new InMemoryQueryMetrics();
+    List<QueryEvent> events = new ArrayList<>();
+    QueryListener listener = events::add;
+
+    Model.addQueryListener(metrics);
+    Model.addQueryListener(listener);
+    try {
+      for (int i = 0; i < 3; i++) {
+        Employee e = new Employee();
+        e.name = "metrics" + i;
+        e.age = 10 + i;
+        e.create();
+      }
+
+      List<Employee> es = new Employee().where("name like ?", "metrics%").fetch();
+      assertEquals(3, es.size());
+
+      Employee e = es.get(0);
+      e.age = 99;
+      assertEquals(1, e.update(true));
+
+      Model.execute("select count(*) from employees where name in ('a', 'b', 'c') and age > 10", pst -> pst.executeQuery());
+
+      try {
+        Model.table("no_such_table").fetch();
+        fail();
+      } catch (Exception ignored) {
+      }
+    } finally {
+      Model.removeQueryListener(metrics);
+      Model.removeQueryListener(listener);
+    }
+
+    InMemoryQueryMetrics.QueryStats inserts = metrics.getStats("employees", Model.QueryType.INSERT);
+    assertEquals(3, inserts.getCount());
+    assertEquals(3, inserts.getRows());
+
+    InMemoryQueryMetrics.QueryStats selects = metrics.getStats("employees", Model.QueryType.SELECT);
+    assertEquals(1, selects.getCount());
+    assertEquals(3, selects.getRows());
+    assertTrue(selects.getMappingNanos() > 0);
+    assertTrue(selects.getLatency().getValueAtPercentile(99) > 0);
+    assertTrue(selects.getLatency().getValueAtPercentile(50) <= selects.getLatency().getMax());
+
+    assertEquals(1, metrics.getStats("employees", Model.QueryType.UPDATE).getRows());
+    assertEquals(1, metrics.getStats(null, null).getCount());
+    assertEquals(1, metrics.getStats("no_such_table", Model.QueryType.SELECT).getFailureCount());
+
+    // 3 inserts of same SQL
+    assertTrue(metrics.getSqlStats().stream().anyMatch(s -> s.getQueryType() == Model.QueryType.INSERT && s.getCount() == 3));
+
+    QueryEvent manual = events.stream().filter(ev -> ev.getQueryType() == null).findFirst().get();
+    assertEquals("select count(*) from employees where name in (?) and age > ?", manual.getNormalizedSql());
+    assertTrue(manual.isSuccess());
+    assertEquals(-1, manual.getRows());
+
+    QueryEvent failed = events.get(events.size() - 1);
+    assertFalse(failed.isSuccess());
+    assertNotNull(failed.getError());
+
+    // no events after removed
+    int n = events.size();
+    new Employee().fetch();
+    assertEquals(n, events.size());
+  }
+
+  @Test
+  public void testCursorQueryMetrics() throws Exception {
+    for (int i = 0; i < 3; i++) {
+      Employee e = new Employee();
+      e.name = "cursormetrics";
+      e.age = i;
+      e.create();
+    }
+
+    InMemoryQueryMetrics metrics = new InMemoryQueryMetrics();
+    List<QueryEvent> events = new ArrayList<>();
+    QueryListener listener = events::add;
+
+    Model.addQueryListener(metrics);
+    Model.addQueryListener(listener);
+    try {
+      try (Stream<Employee> stream = new Employee().where("name = ?", "cursormetrics").stream()) {
+        assertEquals(3, stream.count());
+      }
+
+      AtomicLong count = new AtomicLong();
+      new Employee().where("name = ?", "cursormetrics").forEach(e -> count.incrementAndGet());
+      assertEquals(3, count.get());
+
+      // closed before iterated to the end
+      try (ModelCursor<Employee> cursor = new Employee().where("name = ?", "cursormetrics").cursor()) {
+        cursor.next();
+      }
+    } finally {
+      Model.removeQueryListener(metrics);
+      Model.removeQueryListener(listener);
+    }
+
+    InMemoryQueryMetrics.QueryStats selects = metrics.getStats("employees", Model.QueryType.SELECT);
+    assertEquals(3, selects.getCount());
+    assertEquals(7, selects.getRows());
+    assertEquals(0, selects.getFailureCount());
+
+    QueryEvent first = events.get(0);
+    assertEquals(Arrays.asList("cursormetrics"), first.getParameters());
+    assertTrue(first.isSuccess());
+  }
+
+  @Test
+  public void testSlowQueryLog() throws Exception {
+    SlowQueryLog slowQueries = new SlowQueryLog(new SlowQueryLog.Config()
+            .defaultThresholdMillis(Long.MAX_VALUE / 1_000_000)
+            .thresholdMillis(Model.QueryType.SELECT, 0)
+            .capacity(2)
+            .maxCapturesPerSecond(3)
+            .redactParameters(true)
+            .logCaptured(false));
+
+    Model.addQueryListener(slowQueries);
+    try {
+      Employee ne = new Employee();
+      ne.name = "slow";
+      ne.age = 1;
+      ne.create();
+
+      for (int i = 0; i < 5; i++) {
+        new Employee().where("name = ? and age > ?", "slow", -i).fetch();
+      }
+    } finally {
+      Model.removeQueryListener(slowQueries);
+    }
+
+    // insert is under threshold, 5 selects are slow but only 3 captured in a second, and 2 are kept
+    assertEquals(5, slowQueries.getSlowCount());
+    assertTrue(slowQueries.getDroppedCount() >= 2);
+
+    List<SlowQueryLog.SlowQuery> entries = slowQueries.getEntries();
+    assertEquals(2, entries.size());
+
+    SlowQueryLog.SlowQuery slow = entries.get(1);
+    assertEquals(Model.QueryType.SELECT, slow.getQueryType());
+    assertEquals("employees", slow.getTableName());
+    assertEquals(2, slow.getParameters().size());
+    assertEquals("<redacted>", slow.getParameters().get(0));
+    assertEquals(1, slow.getRows());
+    assertEquals("testSlowQueryLog", slow.getCallerStack().get(0).getMethodName());
+
+    String dump = slowQueries.dump();
+    assertTrue(dump.contains("testSlowQueryLog"));
+    assertTrue(dump.contains("name = ? and age > ?"));
+
+    slowQueries.clear();
+    assertTrue(slowQueries.getEntries().isEmpty());
+
+    // frames of any library class (Associations here) are skipped
+    User u = new User("slow user");
+    u.create();
+    Doc d = new Doc(u.id, "slow doc", "content");
+    d.create();
+
+    SlowQueryLog includes = new SlowQueryLog(new SlowQueryLog.Config().defaultThresholdMillis(0).logCaptured(false));
+    Model.addQueryListener(includes);
+    try {
+      new Doc().includes("user").find(d.id);
+    } finally {
+      Model.removeQueryListener(includes);
+    }
+
+    entries = includes.getEntries();
+    assertEquals(2, entries.size());
+    assertEquals("users", entries.get(1).getTableName());
+    assertEquals("testSlowQueryLog", entries.get(1).getCallerStack().get(0).getMethodName());
+  }
+
+  @Test
+  public void testKeysetPagination() throws Exception {
+    List<Employee> employees = new ArrayList<>();
+    for (int i = 0; i < 25; i++) {
+      Employee e = new Employee();
+      e.name = "page";
+      // duplicated ages to test composite keys
+      e.age = i / 3;
+      employees.add(e);
+    }
+    Model.bulkCreate(employees);
+
+    // single column
+    List<Long> ids = new ArrayList<>();
+    Object last = null;
+    int pages = 0;
+    while (true) {
+      Page<Employee> page = new Employee().where("name = ?", "page").pageAfter("id", last, 10);
+      pages++;
+      page.getItems().forEach(e -> ids.add(e.id));
+      if (!page.hasNext()) break;
+      last = page.getLastValues().get(0);
+    }
+    assertEquals(3, pages);
+    assertEquals(25, ids.size());
+    for (int i = 1; i < ids.size(); i++) {
+      assertTrue(ids.get(i - 1) < ids.get(i));
+    }
+
+    // composite keys in descending order with token
+    Keyset keyset = new Keyset().desc("age").desc("employees.id");
+    List<Employee> fetched = new ArrayList<>();
+    String token = null;
+    do {
+      Page<Employee> page = new Employee().where("name = ?", "page").page(keyset, token, 4);
+      fetched.addAll(page.getItems());
+      token = page.getNextToken();
+    } while (token != null);
+
+    assertEquals(25, fetched.size());
+    for (int i = 1; i < fetched.size(); i++) {
+      Employee a = fetched.get(i - 1);
+      Employee b = fetched.get(i);
+      assertTrue(a.age > b.age || (a.age.equals(b.age) && a.id > b.id));
+    }
+
+    // the same query for all pages
+    Employee query = new Employee().where("name = ?", "page");
+    Page<Employee> p1 = query.page(keyset, null, 4);
+    Page<Employee> p2 = query.page(keyset, p1.getNextToken(), 4);
+    assertEquals(fetched.get(4).id, p2.getItems().get(0).id);
+    Page<Employee> again = query.page(keyset, null, 4);
+    assertEquals(p1.getItems().get(0).id, again.getItems().get(0).id);
+    assertEquals(25, query.fetch().size());
+
+    // token of another keyset
+    Page<Employee> first = new Employee().where("name = ?", "page").page(keyset, null, 4);
+    try {
+      new Employee().page(Keyset.of(Keyset.Direction.ASC, "id"), first.getNextToken(), 4);
+      fail();
+    } catch (IllegalArgumentException ignored) {
+    }
+
+    // order and limit are made by the keyset
+    try {
+      new Employee().order("name").pageAfter("id", null, 4);
+      fail();
+    } catch (IllegalArgumentException ignored) {
+    }
+    try {
+      new Employee().limit(10).pageAfter("id", null, 4);
+      fail();
+    } catch (IllegalArgumentException ignored) {
+    }
+  }
+
+  @Test
+  public void testParallelScan() throws Exception {
+    List<Employee> employees = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      Employee e = new Employee();
+      e.name = i % 10 == 0 ? "skip" : "scan";
+      e.age = i;
+      employees.add(e);
+    }
+    Model.bulkCreate(employees);
+
+    ParallelScan.Config config = new ParallelScan.Config().chunkSize(37).parallelism(4).queueCapacity(10);
+
+    Set<Long> ids = new HashSet<>();
+    String caller = Thread.currentThread().getName();
+    long n = new Employee().where("name = ?", "scan").parallelScan(config, (Employee e) -> {
+      assertEquals(caller, Thread.currentThread().getName());
+      assertEquals("scan", e.name);
+      assertTrue(ids.add(e.id));
+    });
+    assertEquals(900, n);
+    assertEquals(900, ids.size());
+
+    // soft deleted rows are excluded
+    List<Product> products = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      Product p = new Product();
+      p.name = "scan";
+      p.price = i;
+      products.add(p);
+    }
+    Model.bulkCreate(products);
+    new Product().where("price < ?", 10).delete();
+    assertEquals(40, new Product().parallelScan(config, m -> {}));
+    assertEquals(50, new Product().includeDeleted().parallelScan(config, m -> {}));
+
+    // no rows
+    assertEquals(0, new Employee().where("name = ?", "none").parallelScan(config, m -> {}));
+
+    // consumer failure stops the scan
+    AtomicLong consumed = new AtomicLong();
+    try {
+      new Employee().parallelScan(config, m -> {
+        if (consumed.incrementAndGet() == 100) {
+          throw new IllegalStateException("stop");
+        }
+      });
+      fail();
+    } catch (IllegalStateException e) {
+      assertEquals("stop", e.getMessage());
+    }
+    assertEquals(100, consumed.get());
+
+    // worker failure, even an Error, fails the scan
+    try {
+      new ScanFailingEmployee().parallelScan(config, m -> {});
+      fail();
+    } catch (AssertionError e) {
+      assertEquals("worker", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testParallelScanBounds() throws Exception {
+    Model.execute("CREATE TABLE scan_bounds (id BIGINT PRIMARY KEY)", pst -> pst.execute());
+    try {
+      // chunks near Long.MAX_VALUE
+      insertScanBounds(Long.MAX_VALUE - 2, Long.MAX_VALUE - 1, Long.MAX_VALUE);
+      ParallelScan.Config config = new ParallelScan.Config().chunkSize(2).parallelism(4);
+      assertEquals(3, Model.table("scan_bounds").parallelScan(config, m -> {}));
+
+      // max - min overflows long
+      insertScanBounds(Long.MIN_VALUE, 0);
+      Set<Long> ids = new HashSet<>();
+      config = new ParallelScan.Config().chunkSize(Long.MAX_VALUE / 3).parallelism(4);
+      assertEquals(5, Model.table("scan_bounds").parallelScan(config, m -> assertTrue(ids.add(m.getLong("id")))));
+
+      config = new ParallelScan.Config().chunkSize(Long.MAX_VALUE).parallelism(4);
+      assertEquals(5, Model.table("scan_bounds").parallelScan(config, m -> {}));
+    } finally {
+      Model.execute("DROP TABLE scan_bounds", pst -> pst.execute());
+    }
+  }
+
+  private static void insertScanBounds(long... ids) throws Exception {
+    Model.execute("INSERT INTO scan_bounds (id) VALUES (?)", pst -> {
+      for (long id : ids) {
+        pst.setLong(1, id);
+        pst.addBatch();
+      }
+      return pst.executeBatch();
+    });
+  }
+
+  @Table(name = "employees")
+  public static class ScanFailingEmployee extends Model {
+    @Column
+    public Long id;
+
+    @Override
+    protected void afterExecute(QueryType type, boolean success) {
+      if (type == QueryType.SELECT && Thread.currentThread().getName().startsWith("simplemodel-scan-")) {
+        throw new AssertionError("worker");
+      }
+    }
+  }
+
   private String makeName() {
     return UUID.randomUUID().toString();
   }
@@ -1,6 +1,7 @@
 package me.zerosquare.simplemodel.model;
 
 import me.zerosquare.simplemodel.Model;
+import me.zerosquare.simplemodel.annotations.BelongsTo;
 import me.zerosquare.simplemodel.annotations.Column;
 import me.zerosquare.simplemodel.annotations.Table;
 
@@ -18,6 +19,12 @@ public class Comment extends Model {
   @Column
   public String content;
 
+  @BelongsTo
+  public User user;
+
+  @BelongsTo
+  public Doc doc;
+
   public Comment() {
   }
 
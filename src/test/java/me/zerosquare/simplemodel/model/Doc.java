@@ -1,9 +1,13 @@
 package me.zerosquare.simplemodel.model;
 
 import me.zerosquare.simplemodel.Model;
+import me.zerosquare.simplemodel.annotations.BelongsTo;
 import me.zerosquare.simplemodel.annotations.Column;
+import me.zerosquare.simplemodel.annotations.HasMany;
 import me.zerosquare.simplemodel.annotations.Table;
 
+import java.util.List;
+
 @Table(name = "docs")
 public class Doc extends Model {
   @Column
@@ -21,6 +25,12 @@ public class Doc extends Model {
   @Column
   public String props;
 
+  @BelongsTo
+  public User user;
+
+  @HasMany(foreignKey = "doc_id")
+  public List<Comment> comments;
+
   public Doc() {
   }
 